@@ -0,0 +1,42 @@
+package speechRecogniser.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import speechRecogniser.SyntheticData;
+
+/**
+ * BenchmarkData writes the files the benchmarks run on with the SyntheticData of the recogniser:
+ * NUMBER_OF_PHONEMES phonemes of 3 single Gaussian states, a lexicon and a feature file.
+ * The seed is fixed, so results of different runs can be compared.
+ */
+final class BenchmarkData {
+	static final int NUMBER_OF_PHONEMES = 40;
+	static final int VECTOR_SIZE = 39;
+	
+	private BenchmarkData() {
+	}
+	
+	/**
+	 * Creates a directory with a model, a lexicon and a feature file
+	 * @return The directory, holding hmms.mmf, lexicon and utterance.mfc
+	 */
+	static Path create( int vocabularySize, int utteranceLength ) throws IOException {
+		Path directory = Files.createTempDirectory( "speechRecogniser-benchmark" );
+		SyntheticData data = new SyntheticData( NUMBER_OF_PHONEMES, 3, 1, VECTOR_SIZE, 1 );
+		data.writeModel( directory.resolve( "hmms.mmf" ) );
+		data.writeLexicon( directory.resolve( "lexicon" ), vocabularySize );
+		data.writeFeatures( directory.resolve( "utterance.mfc" ), utteranceLength );
+		return directory;
+	}
+	
+	/**
+	 * Deletes a directory made by create
+	 */
+	static void delete( Path directory ) throws IOException {
+		for( String name : new String[] { "hmms.mmf", "lexicon", "utterance.mfc" } )
+			Files.deleteIfExists( directory.resolve( name ) );
+		Files.deleteIfExists( directory );
+	}
+}
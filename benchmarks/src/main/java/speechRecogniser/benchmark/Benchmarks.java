@@ -0,0 +1,49 @@
+package speechRecogniser.benchmark;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options, writing the results as JSON
+ * to jmh-result-<date>-<time>.json unless another result format or file is given with -rf or -rff,
+ * so the results of runs can be kept to track regressions.
+ */
+public class Benchmarks {
+	public static void main( String[] args ) throws RunnerException, IOException {
+		CommandLineOptions commandLine;
+		try {
+			commandLine = new CommandLineOptions( args );
+		} catch( CommandLineOptionException e ) {
+			System.err.println( "Error parsing the command line: " + e.getMessage() );
+			System.exit( 1 );
+			return;
+		}
+		
+		if( commandLine.shouldHelp() ) {
+			commandLine.showHelp();
+			return;
+		}
+		if( commandLine.shouldList() ) {
+			new Runner( commandLine ).list();
+			return;
+		}
+		
+		ChainedOptionsBuilder options = new OptionsBuilder().parent( commandLine );
+		if( !commandLine.getResultFormat().hasValue() )
+			options.resultFormat( ResultFormatType.JSON );
+		if( !commandLine.getResult().hasValue() ) {
+			ResultFormatType format = commandLine.getResultFormat().orElse( ResultFormatType.JSON );
+			options.result( "jmh-result-" + new SimpleDateFormat( "yyyyMMdd-HHmmss" ).format( new Date() ) + "." + format.toString().toLowerCase() );
+		}
+		new Runner( options.build() ).run();
+	}
+}
@@ -0,0 +1,89 @@
+package speechRecogniser.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import speechRecogniser.CompiledModel;
+import speechRecogniser.Lexicon;
+import speechRecogniser.PhonemeCollection;
+import speechRecogniser.Recogniser;
+import speechRecogniser.RecogniserSettings;
+import speechRecogniser.SignalProcessor;
+import speechRecogniser.entity.Observation;
+
+/**
+ * Decoding with the Recogniser, per frame: every invocation accepts the next frame of the utterance,
+ * including its emission scores and search step. After the last frame the utterance is finished and started again,
+ * so the final step into the tail is spread over the frames of the utterance.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector" )
+public class DecodeBenchmark {
+	@Param( { "100", "1000", "10000" } )
+	public int vocabularySize;
+	
+	@Param( { "100", "500" } )
+	public int utteranceLength;
+	
+	@Param( { "VITERBI", "TOKEN_PASSING" } )
+	public RecogniserSettings.Engine engine;
+	
+	@Param( { "false", "true" } )
+	public boolean prefixTree;
+	
+	private Recogniser theRecogniser;
+	private float[] theFeatures;
+	// The next frame to accept
+	private int theFrame;
+	
+	@Setup
+	public void setUp() throws IOException {
+		Path directory = BenchmarkData.create( vocabularySize, utteranceLength );
+		try {
+			PhonemeCollection phonemes = new PhonemeCollection( directory.resolve( "hmms.mmf" ).toString() );
+			Lexicon lexicon = new Lexicon( directory.resolve( "lexicon" ).toString(), phonemes );
+			RecogniserSettings settings = new RecogniserSettings();
+			settings.setEngine( engine );
+			theRecogniser = new Recogniser( new CompiledModel( phonemes, lexicon, prefixTree ), settings );
+			Observation observation = new SignalProcessor( directory.resolve( "utterance.mfc" ) ).getObservation();
+			theFeatures = observation.getFeatures();
+		} finally {
+			BenchmarkData.delete( directory );
+		}
+		theRecogniser.startUtterance();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		theRecogniser.finish();
+	}
+	
+	@Benchmark
+	public int acceptFrame() {
+		theRecogniser.acceptFrames( theFeatures, theFrame * BenchmarkData.VECTOR_SIZE, 1 );
+		if( ++theFrame == utteranceLength ) {
+			theRecogniser.finish();
+			theRecogniser.startUtterance();
+			theFrame = 0;
+		}
+		return theRecogniser.getNumberOfFrames();
+	}
+}
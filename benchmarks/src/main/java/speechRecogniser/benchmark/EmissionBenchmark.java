@@ -0,0 +1,79 @@
+package speechRecogniser.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import speechRecogniser.EmissionScorer;
+import speechRecogniser.PhonemeCollection;
+import speechRecogniser.SignalProcessor;
+import speechRecogniser.entity.Observation;
+
+/**
+ * Scoring the emitting states of all phonemes, per frame: one frame at a time as acceptFrame() does,
+ * and in blocks of BLOCK_SIZE frames as decode() does, where the vector kernel can tile the frames.
+ * Run once with -jvmArgsAppend -DspeechRecogniser.scalar=true to compare with the scalar loop.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector" )
+public class EmissionBenchmark {
+	private static final int BLOCK_SIZE = 64;
+	
+	@Param( { "100", "1000" } )
+	public int utteranceLength;
+	
+	@Param( { "false", "true" } )
+	public boolean bestComponentOnly;
+	
+	private EmissionScorer theScorer;
+	private float[] theFeatures;
+	private double[] theEmissions;
+	// The next frame to score
+	private int theFrame;
+	
+	@Setup
+	public void setUp() throws IOException {
+		Path directory = BenchmarkData.create( 100, Math.max( utteranceLength, BLOCK_SIZE ) );
+		try {
+			theScorer = new EmissionScorer( new PhonemeCollection( directory.resolve( "hmms.mmf" ).toString() ) );
+			Observation observation = new SignalProcessor( directory.resolve( "utterance.mfc" ) ).getObservation();
+			theFeatures = observation.getFeatures();
+		} finally {
+			BenchmarkData.delete( directory );
+		}
+		theEmissions = new double[ BLOCK_SIZE * theScorer.getNumberOfStates() ];
+	}
+	
+	@Benchmark
+	public double[] scoreFrame() {
+		theScorer.score( theFeatures, theFrame * BenchmarkData.VECTOR_SIZE, 1, theEmissions, bestComponentOnly );
+		theFrame = ( theFrame + 1 ) % utteranceLength;
+		return theEmissions;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation( BLOCK_SIZE )
+	public double[] scoreBlock() {
+		int frame = Math.min( theFrame, Math.max( utteranceLength, BLOCK_SIZE ) - BLOCK_SIZE );
+		theScorer.score( theFeatures, frame * BenchmarkData.VECTOR_SIZE, BLOCK_SIZE, theEmissions, bestComponentOnly );
+		theFrame = ( theFrame + BLOCK_SIZE ) % utteranceLength;
+		return theEmissions;
+	}
+}
@@ -0,0 +1,74 @@
+package speechRecogniser.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import speechRecogniser.CompiledModel;
+import speechRecogniser.Lexicon;
+import speechRecogniser.PhonemeCollection;
+
+/**
+ * Loading the phonemes from an HMM definition file, reading the lexicon and constructing the HMMs of its words,
+ * and composing the decoding automaton, linear and as a prefix tree
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ModelBenchmark {
+	@Param( { "100", "1000", "10000" } )
+	public int vocabularySize;
+	
+	private Path theDirectory;
+	private PhonemeCollection thePhonemes;
+	private Lexicon theLexicon;
+	
+	@Setup
+	public void setUp() throws IOException {
+		theDirectory = BenchmarkData.create( vocabularySize, 100 );
+		thePhonemes = new PhonemeCollection( theDirectory.resolve( "hmms.mmf" ).toString() );
+		theLexicon = new Lexicon( theDirectory.resolve( "lexicon" ).toString(), thePhonemes );
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkData.delete( theDirectory );
+	}
+	
+	// Independent of the vocabulary size
+	@Benchmark
+	public PhonemeCollection loadPhonemes() {
+		return new PhonemeCollection( theDirectory.resolve( "hmms.mmf" ).toString() );
+	}
+	
+	@Benchmark
+	public Lexicon buildLexicon() {
+		return new Lexicon( theDirectory.resolve( "lexicon" ).toString(), thePhonemes );
+	}
+	
+	@Benchmark
+	public CompiledModel compileLinear() {
+		return new CompiledModel( thePhonemes, theLexicon, false );
+	}
+	
+	@Benchmark
+	public CompiledModel compilePrefixTree() {
+		return new CompiledModel( thePhonemes, theLexicon, true );
+	}
+}
@@ -0,0 +1,54 @@
+package speechRecogniser.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import speechRecogniser.SignalProcessor;
+import speechRecogniser.entity.Observation;
+
+/**
+ * Parsing a HTK feature file into an Observation, per file
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ParseBenchmark {
+	@Param( { "100", "1000", "10000" } )
+	public int utteranceLength;
+	
+	private Path theDirectory;
+	private Path theFeatureFile;
+	
+	@Setup
+	public void setUp() throws IOException {
+		theDirectory = BenchmarkData.create( 100, utteranceLength );
+		theFeatureFile = theDirectory.resolve( "utterance.mfc" );
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkData.delete( theDirectory );
+	}
+	
+	@Benchmark
+	public Observation parseFeatureFile() throws IOException {
+		return new SignalProcessor( theFeatureFile ).getObservation();
+	}
+}
@@ -0,0 +1,212 @@
+package speechRecogniser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import speechRecogniser.entity.Observation;
+import speechRecogniser.entity.RecognitionResult;
+import speechRecogniser.entity.Stage;
+
+/**
+ * The BatchRecogniser recognises input files on a fixed pool of worker threads.
+ * All workers share one CompiledModel; every worker thread decodes with its own Recogniser,
+ * since a Recogniser owns the buffers of a decode.
+ * The caller keeps the Futures in input order to report the results in that order.
+ * The time to parse a file is added to the UtteranceMetrics of its result, which the workers record
+ * in the RecogniserMetrics when one is given.
+ * 
+ * Files are read and parsed ahead of the decoders by a pool of reader threads, in the order they were submitted,
+ * so the workers decode while the next files are read; on a slow or cold filesystem the workers otherwise wait
+ * for every read. At most prefetchDepth files are parsed and not yet decoded at any time, which bounds the memory
+ * of the Observations waiting: submit() takes a permit for a file before handing it to the readers, and waits for a decode
+ * to finish when none is left. The permits are so taken in the order of the files, as the workers decode them,
+ * so the files holding the permits are always the next ones the workers take.
+ * Other small files, such as labels, can be read on the same readers with prefetch().
+ * With a prefetchDepth of 0 every worker reads its own files.
+ */
+public class BatchRecogniser {
+	// Largest number of reader threads; reads beyond this many at once rarely hide more latency
+	private static final int MAXIMUM_READERS = 8;
+	
+	// A parsed file waiting for a worker
+	private static class Prefetched {
+		final Observation observation;
+		final long parseNanos;
+		
+		Prefetched( Observation anObservation, long parseNanos ) {
+			this.observation = anObservation;
+			this.parseNanos = parseNanos;
+		}
+	}
+	
+	private final ExecutorService theWorkers;
+	// Reads and parses the files ahead of the workers, null when the workers read themselves
+	private final ExecutorService theReaders;
+	// A permit for every file that may be parsed and not yet decoded
+	private final Semaphore thePrefetchPermits;
+	// One Recogniser per worker thread, all sharing theModel
+	private final ThreadLocal<Recogniser> theRecognisers;
+	// The metrics of all utterances, null when they are not recorded
+	private final RecogniserMetrics theMetrics;
+	
+	public BatchRecogniser( CompiledModel aModel, RecogniserSettings settings, int numberOfWorkers ) {
+		this( aModel, settings, numberOfWorkers, null );
+	}
+	
+	/**
+	 * Reads 2 files ahead for every worker
+	 * @param <b>aModel</b> The model shared by all workers
+	 * @param <b>settings</b> The settings of the Recogniser of every worker
+	 * @param <b>numberOfWorkers</b> The number of threads decoding concurrently
+	 * @param <b>metrics</b> The metrics to record every utterance in, or null
+	 */
+	public BatchRecogniser( CompiledModel aModel, RecogniserSettings settings, int numberOfWorkers, RecogniserMetrics metrics ) {
+		this( aModel, settings, numberOfWorkers, 2 * numberOfWorkers, metrics );
+	}
+	
+	/**
+	 * @param <b>aModel</b> The model shared by all workers
+	 * @param <b>settings</b> The settings of the Recogniser of every worker
+	 * @param <b>numberOfWorkers</b> The number of threads decoding concurrently
+	 * @param <b>prefetchDepth</b> The number of files that may be parsed ahead of the workers, 0 to read on the workers
+	 * @param <b>metrics</b> The metrics to record every utterance in, or null
+	 */
+	public BatchRecogniser( final CompiledModel aModel, final RecogniserSettings settings, int numberOfWorkers, int prefetchDepth, RecogniserMetrics metrics ) {
+		this.theMetrics = metrics;
+		if( numberOfWorkers < 1 )
+			throw new IllegalArgumentException( "Number of workers must be at least 1: " + numberOfWorkers );
+		if( prefetchDepth < 0 )
+			throw new IllegalArgumentException( "Prefetch depth must be at least 0: " + prefetchDepth );
+		
+		this.theWorkers = Executors.newFixedThreadPool( numberOfWorkers );
+		if( prefetchDepth > 0 ) {
+			this.theReaders = Executors.newFixedThreadPool( Math.min( prefetchDepth, MAXIMUM_READERS ), new ThreadFactory() {
+				private int count;
+				
+				public synchronized Thread newThread( Runnable task ) {
+					Thread thread = new Thread( task, "reader " + ++count );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+			this.thePrefetchPermits = new Semaphore( prefetchDepth );
+		} else {
+			this.theReaders = null;
+			this.thePrefetchPermits = null;
+		}
+		this.theRecognisers = new ThreadLocal<Recogniser>() {
+			protected Recogniser initialValue() {
+				return new Recogniser( aModel, settings );
+			}
+		};
+	}
+	
+	/**
+	 * Queues an input file for recognition; waits while prefetchDepth files are read ahead and not yet decoded
+	 * @param <b>input_file</b> The HTK feature file to recognise
+	 * @return The Future of the result of the recognition, failing with an IOException when the file cannot be read
+	 */
+	public Future<RecognitionResult> submit( final Path input_file ) {
+		if( theReaders == null ) {
+			return theWorkers.submit( new Callable<RecognitionResult>() {
+				public RecognitionResult call() throws IOException {
+					return recognise( parse( input_file ) );
+				}
+			} );
+		}
+		
+		// Taken here rather than by the reader, so a later file can never take the permit of the file a worker waits for
+		thePrefetchPermits.acquireUninterruptibly();
+		final Future<Prefetched> prefetched;
+		try {
+			prefetched = theReaders.submit( new Callable<Prefetched>() {
+				public Prefetched call() throws IOException {
+					try {
+						return parse( input_file );
+					} catch( IOException e ) {
+						thePrefetchPermits.release();
+						throw e;
+					} catch( RuntimeException e ) {
+						thePrefetchPermits.release();
+						throw e;
+					}
+				}
+			} );
+		} catch( RuntimeException e ) {
+			// shut down
+			thePrefetchPermits.release();
+			throw e;
+		}
+		// The file holds a permit until it is decoded, and the workers take the files in order, so it is read without waiting
+		return theWorkers.submit( new Callable<RecognitionResult>() {
+			public RecognitionResult call() throws Exception {
+				Prefetched theFile;
+				try {
+					theFile = prefetched.get();
+				} catch( ExecutionException e ) {
+					// fail with the exception of the reader, as when the worker reads
+					if( e.getCause() instanceof Exception )
+						throw (Exception)e.getCause();
+					throw e;
+				}
+				try {
+					return recognise( theFile );
+				} finally {
+					thePrefetchPermits.release();
+				}
+			}
+		} );
+	}
+	
+	/**
+	 * Reads a file on the readers, ahead of the decoders, or at once when the workers read their own files
+	 * @param <b>reader</b> Reads the file
+	 * @return The Future of what was read
+	 */
+	public <T> Future<T> prefetch( Callable<T> reader ) {
+		if( theReaders != null )
+			return theReaders.submit( reader );
+		
+		FutureTask<T> task = new FutureTask<T>( reader );
+		task.run();
+		return task;
+	}
+	
+	/**
+	 * Parses a feature file, timing the parse
+	 */
+	private static Prefetched parse( Path input_file ) throws IOException {
+		// The signalProcessor parses the feature file that must be recognised
+		long start = System.nanoTime();
+		SignalProcessor theSignalProcessor = new SignalProcessor( input_file );
+		return new Prefetched( theSignalProcessor.getObservation(), System.nanoTime() - start );
+	}
+	
+	/**
+	 * Decodes a parsed file with the Recogniser of the worker thread, and records its metrics
+	 */
+	private RecognitionResult recognise( Prefetched theFile ) {
+		RecognitionResult theResult = theRecognisers.get().decode( theFile.observation );
+		theResult.getMetrics().addStageTime( Stage.PARSE, theFile.parseNanos );
+		if( theMetrics != null )
+			theMetrics.record( theResult.getMetrics() );
+		return theResult;
+	}
+	
+	/**
+	 * Stops the workers and readers after all submitted files are recognised
+	 */
+	public void shutdown() {
+		if( theReaders != null )
+			theReaders.shutdown();
+		theWorkers.shutdown();
+	}
+}
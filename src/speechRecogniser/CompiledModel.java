@@ -0,0 +1,210 @@
+package speechRecogniser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import speechRecogniser.entity.Word;
+import speechRecogniser.hmm.*;
+
+/**
+ * The CompiledModel is the decoding automaton for the Recogniser, built once from a PhonemeCollection and a Lexicon.
+ * It connects the HMM of every word in the Lexicon between a common nonemitting head and tail state,
+ * numbers the states and fixes the start transitions, and compiles the automaton into a DecodingGraph.
+ * Optionally the words are connected as a LexiconTree instead, so words with the same first phonemes share their states.
+ * Decoding does not change the CompiledModel,
+ * so it can be reused for any number of Observations.
+ * A CompiledModel can be stored in a ModelFile; a model read back from the file only has what decoding needs:
+ * it has no PhonemeCollection, automaton or HMMs of the words.
+ */
+public class CompiledModel {
+	private final PhonemeCollection thePhonemeCollection;
+	// The names of the phonemes, the ids in the transcriptions of the words
+	private final SymbolTable thePhonemeSymbols;
+	private final Lexicon theLexicon;
+	private final HMM theAutomaton;
+	// All states of theAutomaton, the index in the list is the statenumber
+	private final List<State> theStateList;
+	// theStateList compiled into flat arrays for the search
+	private final DecodingGraph theGraph;
+	// Index in the words of the Lexicon of the word each state belongs to, -1 for the head, tail and shared states
+	private final int[] theWordIndices;
+	// Scores the emitting states of the phonemes
+	private final EmissionScorer theEmissionScorer;
+	
+	public CompiledModel( PhonemeCollection phonemes, Lexicon aLexicon ) {
+		this( phonemes, aLexicon, false );
+	}
+	
+	/**
+	 * @param <b>phonemes</b> The trained phonemes
+	 * @param <b>aLexicon</b> The words to recognise
+	 * @param <b>prefixTree</b> Whether to share the states of common first phonemes of words in a LexiconTree
+	 */
+	public CompiledModel( PhonemeCollection phonemes, Lexicon aLexicon, boolean prefixTree ) {
+		this.thePhonemeCollection = phonemes;
+		this.thePhonemeSymbols = phonemes.getPhonemeSymbols();
+		this.theLexicon = aLexicon;
+		if( prefixTree ) {
+			LexiconTree tree = new LexiconTree( aLexicon, phonemes );
+			this.theAutomaton = tree.getAutomaton();
+			this.theStateList = tree.getStatesList();
+			this.theWordIndices = tree.getWordIndices();
+		} else {
+			this.theAutomaton = constructAutomaton( aLexicon );
+			this.theStateList = Collections.unmodifiableList( numberStates( theAutomaton ) );
+			this.theWordIndices = indexWords( aLexicon, theStateList.size() );
+		}
+		this.theGraph = new DecodingGraph( theStateList );
+		this.theEmissionScorer = new EmissionScorer( phonemes );
+	}
+	
+	/**
+	 * Creates a model from its compiled parts, as stored in a ModelFile
+	 * @param <b>phonemeSymbols</b> The names of the phonemes
+	 * @param <b>aLexicon</b> The words to recognise
+	 * @param <b>graph</b> The compiled automaton
+	 * @param <b>wordIndices</b> The index of the word of each state in the automaton, -1 for states not in a word
+	 * @param <b>scorer</b> Scores the emitting states of the automaton
+	 */
+	CompiledModel( SymbolTable phonemeSymbols, Lexicon aLexicon, DecodingGraph graph, int[] wordIndices, EmissionScorer scorer ) {
+		if( wordIndices.length != graph.getNumberOfStates() )
+			throw new IllegalArgumentException( wordIndices.length + " word indices for " + graph.getNumberOfStates() + " states" );
+		this.thePhonemeCollection = null;
+		this.thePhonemeSymbols = phonemeSymbols;
+		this.theLexicon = aLexicon;
+		this.theAutomaton = null;
+		this.theStateList = null;
+		this.theGraph = graph;
+		this.theWordIndices = wordIndices;
+		this.theEmissionScorer = scorer;
+	}
+	
+	private HMM constructAutomaton( Lexicon aLexicon ) {
+		// Create a head and tail nonemitting state
+		int stateCounter = 0;
+		State head, tail;
+		HMM automaton = new HMM( "Viterbi Automaton" );
+		head = new State();
+		automaton.appendState( head );			// also sets statenumber to 1 for head
+		tail = new State();
+		
+		// connect each wordModel in the lexicon through a transition from the head,
+		// and fix the end of the wordModel to the tail of the automaton
+		for( Word word : aLexicon.getWords() ) {
+			// Get the HMM that is constructed for each word by the Lexicon 
+			HMM wordModel = word.getModel();
+			// log P(1) => 0; Every word is equally likely in the first non-emitting state of the automaton
+			head.addTransition( 0, wordModel.getFirstState() );
+			// Set the last transition of the model to the common non-emitting end-state
+			Transition t = wordModel.getTailConnectTransition();
+			t.setNextState( tail );
+			
+			// count number of added states to set statenumbers for the automaton
+			stateCounter += wordModel.getNumberOfStates();
+		}
+		automaton.setReadNumberOfStates( stateCounter + 2 );		// no of states plus head and tail
+		automaton.setLastState( tail );					// not-so-clean hack to set reference to last state, needed for getStateList
+		
+		return automaton;
+	}
+	
+	/**
+	 * Numbers all states in the automaton and fixes the start transition probabilities.
+	 * @param <b>automaton</b> The constructed automaton
+	 * @return The List of states in the automaton, ordered by statenumber
+	 */
+	private List<State> numberStates( HMM automaton ) {
+		// Get list of states in the automaton
+		List<State> stateList = automaton.getStatesList();
+		int numberOfStates = stateList.size();
+		// The last state still needs a number...
+		automaton.getLastState().setStateNumber( numberOfStates-1 );
+
+		// fix start transitions probabilities to match the number of transitions out of the start state
+		// transitions start -> other : log(1/numberOfStates-2) => -log(numberOfStates-2)
+		double startTransitionProbability = -Math.log( numberOfStates-2 );
+		for( Transition t : automaton.getFirstState().getTransitions() ) {
+			t.setProbability( startTransitionProbability );
+		}
+		
+		return stateList;
+	}
+	
+	/**
+	 * Maps each numbered state to the word in the lexicon it is part of
+	 * @return The index of the word for each statenumber, -1 for states not in a word
+	 */
+	private int[] indexWords( Lexicon aLexicon, int numberOfStates ) {
+		int[] wordIndices = new int[ numberOfStates ];
+		Arrays.fill( wordIndices, -1 );
+		
+		List<Word> words = aLexicon.getWords();
+		for( int wordIndex = 0; wordIndex < words.size(); wordIndex++ ) {
+			State state = words.get( wordIndex ).getModel().getFirstState();
+			while( state != null ) {
+				wordIndices[ state.getStateNumber() ] = wordIndex;
+				state = state.getNextState();
+			}
+		}
+		return wordIndices;
+	}
+	
+	/**
+	 * @return The phonemes the model was compiled from, null for a model read from a ModelFile
+	 */
+	public PhonemeCollection getPhonemes() {
+		return this.thePhonemeCollection;
+	}
+	
+	public SymbolTable getPhonemeSymbols() {
+		return this.thePhonemeSymbols;
+	}
+	
+	public Lexicon getLexicon() {
+		return this.theLexicon;
+	}
+	
+	/**
+	 * @return The automaton, null for a model read from a ModelFile
+	 */
+	public HMM getAutomaton() {
+		return this.theAutomaton;
+	}
+	
+	/**
+	 * @return All states of the automaton, null for a model read from a ModelFile
+	 */
+	public List<State> getStatesList() {
+		return this.theStateList;
+	}
+	
+	public DecodingGraph getGraph() {
+		return this.theGraph;
+	}
+	
+	/**
+	 * @return The Word the state with the statenumber is part of, null for the head, tail and shared states
+	 */
+	public Word getWordOfState( int stateNumber ) {
+		int wordIndex = theWordIndices[ stateNumber ];
+		return wordIndex < 0 ? null : theLexicon.getWords().get( wordIndex );
+	}
+	
+	// The word index of every state, for writing a ModelFile; must not be changed
+	int[] getWordIndices() {
+		return this.theWordIndices;
+	}
+	
+	public int getNumberOfStates() {
+		return this.theGraph.getNumberOfStates();
+	}
+	
+	public int getNumberOfEmittingStates() {
+		return this.theEmissionScorer.getNumberOfStates();
+	}
+	
+	public EmissionScorer getEmissionScorer() {
+		return this.theEmissionScorer;
+	}
+}
@@ -0,0 +1,19 @@
+package speechRecogniser;
+
+/**
+ * An EmissionKernel is an alternative implementation of the scoring loop of an EmissionScorer,
+ * which uses it for all timeslices when one could be created. It holds the parameters of the scorer
+ * and must be read-only after construction, as the scorer is shared between threads.
+ */
+interface EmissionKernel {
+	/**
+	 * Calculates the emission log-probabilities of all states for a number of consecutive timeslices
+	 * @see EmissionScorer#score(float[], int, int, double[], boolean)
+	 */
+	void score( float[] features, int offset, int numberOfVectors, double[] emissions, boolean bestComponentOnly );
+	
+	/**
+	 * @return A short description of the kernel, for debugging
+	 */
+	String getName();
+}
@@ -0,0 +1,250 @@
+package speechRecogniser;
+
+import java.util.List;
+
+import speechRecogniser.entity.Observation;
+import speechRecogniser.hmm.Gaussian;
+import speechRecogniser.hmm.State;
+
+/**
+ * The EmissionScorer calculates the emission log-probabilities of the emitting states for an Observation.
+ * Every state is a mixture of diagonal Gaussians; everything that only depends on the state is calculated once
+ * when the scorer is constructed, so scoring a Gaussian is a single multiply-add loop:
+ *
+ *   log b(x) = logadd over components c of ( constant[c] - sum( ( x[i] - mean[c][i] )^2 * ( 1 / 2 variance[c][i] ) ) )
+ *   constant[c] = log( weight[c] ) - 0.5 * sum( log( 2 pi variance[c][i] ) )
+ *
+ * The logNormaliser -0.5 * sum( log( 2 pi variance ) ) is -0.5 * GCONST as HTK defines it, but is calculated from the variances
+ * so the scores do not depend on the precision GCONST was written with.
+ * The components of a mixture are added with the table-driven LogAdd, which skips components far below the best one.
+ * Optionally only the best component is taken, an approximation that saves the additions.
+ * A state with a single Gaussian is scored exactly as before mixtures were supported.
+ * 
+ * When the Java Vector API is available (--add-modules jdk.incubator.vector), blocks of timeslices are scored
+ * by the VectorEmissionKernel with SIMD instructions; otherwise, or when the system property
+ * speechRecogniser.scalar is true, by the scalar loop below. The kernel is loaded by reflection,
+ * so the scorer runs on any Java runtime.
+ * The scorer is read-only after construction and can be shared between threads.
+ */
+public class EmissionScorer {
+	// Number of emitting states, the emission index of a state is its index in componentOffsets
+	private final int numberOfStates;
+	// Length of the feature vectors
+	private final int vectorSize;
+	// Index of the first component of each state, plus the total number of components at the end
+	private final int[] componentOffsets;
+	// Means of all components, vectorSize values per component
+	private final double[] means;
+	// -1 / ( 2 * variance ) of all components, vectorSize values per component
+	private final double[] scaledPrecisions;
+	// log( weight ) - 0.5 * log( ( 2 pi )^vectorSize * prod( variance ) ) per component
+	private final double[] constants;
+	// The kernel that scores blocks of timeslices, null to score with the scalar loop
+	private final EmissionKernel theKernel;
+
+	/**
+	 * Precalculates the Gaussian constants of all emitting states
+	 * @param <b>phonemes</b> The phonemes of a trained recogniser
+	 */
+	public EmissionScorer( PhonemeCollection phonemes ) {
+		List<State> emittingStates = phonemes.getEmittingStates();
+		this.numberOfStates = emittingStates.size();
+		this.vectorSize = numberOfStates > 0 ? emittingStates.get( 0 ).getComponents()[ 0 ].getMean().length : 0;
+		this.componentOffsets = new int[ numberOfStates + 1 ];
+		
+		int numberOfComponents = 0;
+		for( State state : emittingStates ) {
+			numberOfComponents += state.getComponents().length;
+		}
+		this.means = new double[ numberOfComponents * vectorSize ];
+		this.scaledPrecisions = new double[ numberOfComponents * vectorSize ];
+		this.constants = new double[ numberOfComponents ];
+
+		int component = 0;
+		for( int emissionIndex = 0; emissionIndex < numberOfStates; emissionIndex++ ) {
+			State state = emittingStates.get( emissionIndex );
+			if( state.getEmissionIndex() != emissionIndex )
+				throw new IllegalArgumentException( "State " + state + " does not have emission index " + emissionIndex );
+			componentOffsets[ emissionIndex ] = component;
+			
+			for( int index = 0; index < state.getComponents().length; index++, component++ ) {
+				Gaussian gaussian = state.getComponents()[ index ];
+				int offset = component * vectorSize;
+				float[] mean = gaussian.getMean();
+				float[] variance = gaussian.getVariance();
+				if( mean.length != vectorSize || variance.length != vectorSize )
+					throw new IllegalArgumentException( "State " + state + " does not have vectors of size " + vectorSize );
+	
+				double logNormaliser = 0;
+				for( int featureIndex = 0; featureIndex < vectorSize; featureIndex++ ) {
+					means[ offset + featureIndex ] = mean[ featureIndex ];
+					scaledPrecisions[ offset + featureIndex ] = -1 / ( 2 * (double)variance[ featureIndex ] );
+					logNormaliser -= 0.5 * Math.log( 2 * Math.PI * variance[ featureIndex ] );
+				}
+				constants[ component ] = state.getLogWeights()[ index ] + logNormaliser;
+			}
+		}
+		componentOffsets[ numberOfStates ] = component;
+		this.theKernel = createKernel();
+	}
+
+	/**
+	 * Creates a scorer from precalculated constants, as stored in a compiled model file
+	 * @param <b>vectorSize</b> The length of the feature vectors
+	 * @param <b>componentOffsets</b> The index of the first component of each state, plus the number of components
+	 * @param <b>means</b> The means of all components, vectorSize values per component
+	 * @param <b>scaledPrecisions</b> -1 / ( 2 * variance ) of all components, vectorSize values per component
+	 * @param <b>constants</b> The log-weight plus logNormaliser of every component
+	 */
+	EmissionScorer( int vectorSize, int[] componentOffsets, double[] means, double[] scaledPrecisions, double[] constants ) {
+		this.numberOfStates = componentOffsets.length - 1;
+		this.vectorSize = vectorSize;
+		int numberOfComponents = constants.length;
+		if( numberOfStates < 0 || componentOffsets[ 0 ] != 0 || componentOffsets[ numberOfStates ] != numberOfComponents
+				|| means.length != numberOfComponents * vectorSize || scaledPrecisions.length != numberOfComponents * vectorSize )
+			throw new IllegalArgumentException( "Parameters do not match " + numberOfComponents + " components of size " + vectorSize );
+		for( int state = 0; state < numberOfStates; state++ ) {
+			if( componentOffsets[ state + 1 ] <= componentOffsets[ state ] )
+				throw new IllegalArgumentException( "State " + state + " has no components" );
+		}
+		this.componentOffsets = componentOffsets;
+		this.means = means;
+		this.scaledPrecisions = scaledPrecisions;
+		this.constants = constants;
+		this.theKernel = createKernel();
+	}
+	
+	/**
+	 * Loads the VectorEmissionKernel when the Vector API is available and SIMD lanes exist for doubles
+	 * @return The kernel, or null to score with the scalar loop
+	 */
+	private EmissionKernel createKernel() {
+		if( Boolean.getBoolean( "speechRecogniser.scalar" ) )
+			return null;
+		try {
+			Class<?> kernelClass = Class.forName( "speechRecogniser.VectorEmissionKernel" );
+			return (EmissionKernel)kernelClass.getDeclaredConstructor( EmissionScorer.class ).newInstance( this );
+		} catch( ReflectiveOperationException e ) {
+			// not compiled, or no SIMD lanes
+			return null;
+		} catch( LinkageError e ) {
+			// jdk.incubator.vector is not available in this runtime
+			return null;
+		}
+	}
+	
+	public int getNumberOfStates() {
+		return this.numberOfStates;
+	}
+
+	public int getVectorSize() {
+		return this.vectorSize;
+	}
+	
+	/**
+	 * @return The largest number of Gaussians in the mixture of a state
+	 */
+	public int getMaximumNumberOfComponents() {
+		int maximum = 0;
+		for( int state = 0; state < numberOfStates; state++ )
+			maximum = Math.max( maximum, componentOffsets[ state + 1 ] - componentOffsets[ state ] );
+		return maximum;
+	}
+	
+	/**
+	 * @return A short description of the loop that scores blocks of timeslices, for debugging
+	 */
+	public String getKernelName() {
+		return theKernel == null ? "scalar" : theKernel.getName();
+	}
+	
+	// The precalculated constants, for writing a compiled model file; must not be changed
+	int[] getComponentOffsets() {
+		return this.componentOffsets;
+	}
+	
+	double[] getMeans() {
+		return this.means;
+	}
+	
+	double[] getScaledPrecisions() {
+		return this.scaledPrecisions;
+	}
+	
+	double[] getConstants() {
+		return this.constants;
+	}
+
+	/**
+	 * Calculates the emission log-probabilities of all states for every timeslice in the observation.
+	 * The emission of the state with emission index e at timeslice t is stored in emissions[ t * numberOfStates + e ]
+	 * @param <b>observation</b> The observation to score
+	 * @param <b>emissions</b> The buffer to store the emissions in, large enough for all timeslices
+	 */
+	public void score( Observation observation, double[] emissions ) {
+		if( observation.getVectorSize() != vectorSize )
+			throw new IllegalArgumentException( "Feature vectors of size " + observation.getVectorSize() + ", expected " + vectorSize );
+
+		score( observation.getFeatures(), 0, observation.getNumberOfVectors(), emissions );
+	}
+
+	/**
+	 * Calculates the emission log-probabilities of all states for a number of consecutive timeslices.
+	 * The emission of the state with emission index e at the t-th timeslice is stored in emissions[ t * numberOfStates + e ]
+	 * @param <b>features</b> The array holding the feature vectors, timeslice after timeslice
+	 * @param <b>offset</b> The index of the first feature of the first timeslice in features
+	 * @param <b>numberOfVectors</b> The number of timeslices to score
+	 * @param <b>emissions</b> The buffer to store the emissions in, large enough for all timeslices
+	 */
+	public void score( float[] features, int offset, int numberOfVectors, double[] emissions ) {
+		score( features, offset, numberOfVectors, emissions, false );
+	}
+
+	/**
+	 * Calculates the emission log-probabilities of all states for a number of consecutive timeslices.
+	 * @param <b>bestComponentOnly</b> Whether to approximate a mixture by its best scoring Gaussian
+	 * @see #score(float[], int, int, double[])
+	 */
+	public void score( float[] features, int offset, int numberOfVectors, double[] emissions, boolean bestComponentOnly ) {
+		if( theKernel != null ) {
+			theKernel.score( features, offset, numberOfVectors, emissions, bestComponentOnly );
+			return;
+		}
+		for( int timeslice = 0; timeslice < numberOfVectors; timeslice++ ) {
+			scoreSlice( features, offset + timeslice * vectorSize, emissions, timeslice * numberOfStates, bestComponentOnly );
+		}
+	}
+
+	/**
+	 * Calculates the emission log-probabilities of all states for a single timeslice
+	 * @param <b>features</b> The array holding the feature vector of the timeslice
+	 * @param <b>featureOffset</b> The index of the first feature of the timeslice in features
+	 * @param <b>emissions</b> The buffer to store the emissions in
+	 * @param <b>offset</b> The index in emissions for the state with emission index 0
+	 * @param <b>bestComponentOnly</b> Whether to approximate a mixture by its best scoring Gaussian
+	 */
+	public void scoreSlice( float[] features, int featureOffset, double[] emissions, int offset, boolean bestComponentOnly ) {
+		for( int state = 0; state < numberOfStates; state++ ) {
+			int first = componentOffsets[ state ];
+			int last = componentOffsets[ state + 1 ];
+			double score = scoreComponent( features, featureOffset, first );
+			for( int component = first + 1; component < last; component++ ) {
+				double componentScore = scoreComponent( features, featureOffset, component );
+				score = bestComponentOnly ? Math.max( score, componentScore ) : LogAdd.add( score, componentScore );
+			}
+			emissions[ offset + state ] = score;
+		}
+	}
+	
+	/**
+	 * @return The log-probability of the feature vector for a single Gaussian, including its log-weight
+	 */
+	private double scoreComponent( float[] features, int featureOffset, int component ) {
+		double score = constants[ component ];
+		for( int featureIndex = 0, parameter = component * vectorSize; featureIndex < vectorSize; featureIndex++, parameter++ ) {
+			double difference = features[ featureOffset + featureIndex ] - means[ parameter ];
+			score = Math.fma( difference, difference * scaledPrecisions[ parameter ], score );
+		}
+		return score;
+	}
+}
@@ -15,27 +15,77 @@ import speechRecogniser.hmm.*;
  * The Lexicon manages all words that the SpeechRecogniser can recognise.
  * It parses an input lexicon, stores the words and their
  * phonetic transcription, and creates/manages the associated HMMs
+ * The names of the words are interned in a SymbolTable, and the transcriptions are stored as phoneme ids,
+ * so looking up a word or phoneme does not scan a list.
  * @author Zeeger Lubsen
  */
 public class Lexicon {
 	// List of Words that can be recognised
 	private List<Word> theDictionairy;
+	// The names of the words
+	private SymbolTable theWordSymbols;
+	// The first Word in theDictionairy for each name, the index in the list is the id of the word
+	private List<Word> theWordsById;
 	// Counter for numbering states when copying states from phoneme HMMs to word HMMs
-	private static int statecnt = 0;
+	private int statecnt = 0;
 
 	public Lexicon( String aLexiconFile, PhonemeCollection phonemes ) {
-		parseLexiconFile( aLexiconFile );
+		try {
+			parseLexiconFile( aLexiconFile, phonemes );
+		} catch( FileNotFoundException e ) {
+			System.err.println( "File '" + aLexiconFile + "' not found!" );
+			System.err.println( "Cannot built Lexicon. Exiting." );
+			System.exit( 0 );
+		} catch( IOException e ) {
+			System.err.println( "IOException while reading " + aLexiconFile );
+		}
 		constructHMMs( phonemes );
 	}
 	
+	private Lexicon() {
+	}
+	
+	/**
+	 * Reads a lexicon like the constructor, but leaves errors to the caller instead of exiting,
+	 * for loading a model into a running recogniser
+	 * @param <b>aLexiconFile</b> The file to parse the lexicon from
+	 * @param <b>phonemes</b> The phonemes the transcriptions consist of
+	 * @throws IOException When the file cannot be read
+	 * @throws IllegalArgumentException When a transcription has a phoneme that is not in the phonemes
+	 */
+	public static Lexicon read( String aLexiconFile, PhonemeCollection phonemes ) throws IOException {
+		Lexicon lexicon = new Lexicon();
+		lexicon.parseLexiconFile( aLexiconFile, phonemes );
+		lexicon.constructHMMs( phonemes );
+		return lexicon;
+	}
+	
+	/**
+	 * Creates a Lexicon of words without HMMs, as stored in a compiled model file
+	 * @param <b>words</b> The words, in the order of the lexicon they were compiled from, with the ids they had there
+	 */
+	Lexicon( List<Word> words ) {
+		this.theDictionairy = new ArrayList<Word>();
+		this.theWordSymbols = new SymbolTable();
+		this.theWordsById = new ArrayList<Word>();
+		for( Word word : words ) {
+			if( theWordSymbols.intern( word.getWord() ) != word.getId() )
+				throw new IllegalArgumentException( "Word '" + word.getWord() + "' does not have id " + word.getId() );
+			addWord( word );
+		}
+	}
+	
 	/**
 	 * Reads a lexiconfile and parses all word and their phonemic transcription.
 	 * @param aLexiconFile The file to parse the lexicon from.
+	 * @param phonemes The phonemes the transcriptions consist of.
 	 */
-	private void parseLexiconFile( String aLexiconFile ) {
+	private void parseLexiconFile( String aLexiconFile, PhonemeCollection phonemes ) throws IOException {
 		BufferedReader inputStream = null;
 		
 		this.theDictionairy = new ArrayList<Word>();
+		this.theWordSymbols = new SymbolTable();
+		this.theWordsById = new ArrayList<Word>();
 		
 		try {
 			inputStream = new BufferedReader( new FileReader( aLexiconFile ) );
@@ -49,20 +99,31 @@ public class Lexicon {
 				while( tokenizer.hasMoreTokens() ) {
 					readTranscription.add( tokenizer.nextToken() );
 				}
+				int[] phonemeIds = new int[ readTranscription.size() ];
+				for( int index = 0; index < phonemeIds.length; index++ ) {
+					phonemeIds[ index ] = phonemes.getPhonemeId( readTranscription.get( index ) );
+					if( phonemeIds[ index ] < 0 )
+						throw new IllegalArgumentException( "Phoneme '" + readTranscription.get( index ) + "' of word '" + readWord + "' is not in the phoneme collection" );
+				}
 				
-				Word word = new Word( readWord, readTranscription );
-				
-				theDictionairy.add( word );
+				addWord( new Word( theWordSymbols.intern( readWord ), readWord, readTranscription, phonemeIds ) );
 			}
-		} catch( FileNotFoundException e ) {
-			System.err.println( "File '" + aLexiconFile + "' not found!" );
-			System.err.println( "Cannot built Lexicon. Exiting." );
-			System.exit( 0 );
-		} catch( IOException e ) {
-			System.err.println( "IOException while reading " + aLexiconFile );
+		} finally {
+			if( inputStream != null )
+				inputStream.close();
 		}
 	}
 	
+	/**
+	 * Adds a word to the dictionairy and its index by id
+	 * @param <b>word</b> The word, its id must be interned in theWordSymbols
+	 */
+	private void addWord( Word word ) {
+		theDictionairy.add( word );
+		if( word.getId() == theWordsById.size() )
+			theWordsById.add( word );
+	}
+	
 	/**
 	 * Constructs a HMM for each word in the lexicon from a set of Phonemes.
 	 * @param phonemes the set of phonemes to construct the HMM for a word.
@@ -70,16 +131,18 @@ public class Lexicon {
 	private void constructHMMs( PhonemeCollection phonemes ) {
 		// construct HMMs for all words in the dictonairy
 		// NOTE: the first and last nonemitting-states are not added!
+		HMM silPhoneme = phonemes.getPhoneme( "sil" );
+		if( silPhoneme == null )
+			throw new IllegalArgumentException( "Phoneme 'sil' is not in the phoneme collection" );
 		for( Word word : theDictionairy ) {
 			// Set a 'sil' phoneme at the beginning of the model
-			HMM silPhoneme = phonemes.getPhoneme( "sil" );
 			HMM wordModel = new HMM( word.getWord() );
 			
 			appendAndCopyStatesPhonemeToModel( silPhoneme, wordModel );
 			
 			// and for each phoneme in the word, add the emitting states
-			for( String wordPhoneme : word.getTranscription() ) {
-				HMM phoneme = phonemes.getPhoneme( wordPhoneme );
+			for( int phonemeId : word.getPhonemeIds() ) {
+				HMM phoneme = phonemes.getPhoneme( phonemeId );
 				appendAndCopyStatesPhonemeToModel( phoneme, wordModel );
 			}
 			
@@ -92,89 +155,69 @@ public class Lexicon {
 	}
 	
 	/**
-	 * Makes copies of the 3 emitting states and append these to the wordModel, and connect the transitions
+	 * Makes copies of the emitting states and append these to the wordModel, and connect the transitions
+	 * A transition of the copy moves as many states as the transition of the phoneme; the transition out of the last
+	 * emitting state to the nonemitting last state is left open, it is connected by the next phoneme or the tail.
 	 * @param <b>phoneme</b> The phoneme HMM which emitting states need to be appended
 	 * @param <b>wordModel</b> The HMM to append the states to
 	 */
-	private void appendAndCopyStatesPhonemeToModel( HMM phoneme, HMM wordModel ) {
+	void appendAndCopyStatesPhonemeToModel( HMM phoneme, HMM wordModel ) {
 		// Already maintain a reference to the final outgoing transition of the wordModel
 		// so it can be fixed when the phoneme is appended
-		Transition ta45 = wordModel.getTailConnectTransition();
+		Transition exit = wordModel.getTailConnectTransition();
 		// append phoneme states
-		State fromState, toState = null;
-		fromState = phoneme.getFirstState().getNextState();
+		List<State> copies = new ArrayList<State>();
+		State fromState = phoneme.getFirstState().getNextState();
 		while( !fromState.equals( phoneme.getLastState() ) ) {
 			State s = new State( fromState );
 			s.setStateNumber( ++statecnt );
-			if( toState == null ) 
-				toState = s;
+			copies.add( s );
 			wordModel.appendState( s );
 			fromState = fromState.getNextState();
 		}
 		// set transitions for all states
 		fromState = phoneme.getFirstState().getNextState();
-		while( !fromState.equals( phoneme.getLastState() ) ) {
+		for( int index = 0; index < copies.size(); index++ ) {
+			State toState = copies.get( index );
 			for( Transition t : fromState.getTransitions() ) {
-				State transState;
-				switch( t.getStepCount() ) {
-				case 1:
-					transState = toState.getNextState();
-					break;
-				case 2:
-					transState = toState.getNextState().getNextState();
-					break;
-				case -2:
-					transState = toState.getPreviousState().getPreviousState();
-					break;
-				default: // case 0
-					transState = toState;
-					break;
-				}
-				toState.addTransition( t.getProbability() , transState );
+				int target = index + t.getStepCount();
+				if( target >= 0 && target < copies.size() )
+					toState.addTransition( t.getProbability(), copies.get( target ) );
+				else if( target == copies.size() && index == copies.size() - 1 )
+					toState.addTransition( t.getProbability(), null );
 			}
 			fromState = fromState.getNextState();
-			toState = toState.getNextState();
-		}
-		// Fix 'a45'-transition between the new last and old last phonemes
-		if( ta45 != null ) {
-			State firstOfLastPhoneme = wordModel.getLastState().getPreviousState().getPreviousState();
-			ta45.setNextState( firstOfLastPhoneme );
 		}
+		// Fix the exit transition between the new last and old last phonemes
+		if( exit != null )
+			exit.setNextState( copies.get( 0 ) );
 	}
 	
+	/**
+	 * @return The first Word in the lexicon with the name, null when there is none
+	 * @param <b>wordname</b> The name of the word
+	 */
 	public Word getWord( String wordname ) {
-		for( Word word : theDictionairy ) {
-			if( word.getWord().equals( wordname ) )
-				return word;
-		}
-		return null;
+		int id = theWordSymbols.getId( wordname );
+		return id < 0 ? null : theWordsById.get( id );
 	}
 	
-	public List<Word> getWords() {
-		return this.theDictionairy;
+	/**
+	 * @return The first Word in the lexicon with the id
+	 * @param <b>id</b> The id of the word, as given by Word.getId
+	 */
+	public Word getWord( int id ) {
+		return theWordsById.get( id );
 	}
 	
 	/**
-	 * Return the Word that matches the specified transcription 
-	 * @param <b>aTranscription</b> The transcription of the Word
-	 * @return The Word that matches the transcription
+	 * @return The names of the words, interned as their ids
 	 */
-	public Word getWordByTranscription( List<String> aTranscription ) {
-		Word matchedWord = null;
-		boolean match = false;
-
-		// Check each word, stop when a match is found
-		for( int wordIndex = 0; wordIndex < theDictionairy.size() && !match; wordIndex++ ) {
-			Word word = theDictionairy.get( wordIndex );
-			// If the size of the transcription is different, don't bother
-			if( word.getTranscription().size() == aTranscription.size() )
-				// All phonemes must be in the transcription of the Word
-				if( aTranscription.containsAll( word.getTranscription() ) ) {
-					matchedWord = word;
-					match = true;
-				}
-		}
-		
-		return matchedWord;
+	public SymbolTable getWordSymbols() {
+		return this.theWordSymbols;
+	}
+	
+	public List<Word> getWords() {
+		return this.theDictionairy;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,164 @@
+package speechRecogniser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import speechRecogniser.entity.Word;
+import speechRecogniser.hmm.*;
+
+/**
+ * The LexiconTree is a prefix tree of the transcriptions of all words in a Lexicon, built as a single automaton.
+ * Every word is 'sil' + phonemes + 'sil'. Words that start with the same phonemes share the states of those phonemes,
+ * so the leading 'sil' is shared by all words. After the last phoneme of a word, the word has its own trailing 'sil',
+ * which connects to the tail of the automaton; only these states identify a word.
+ * The last emitting state of a phoneme has its exit transition to every following phoneme (or trailing 'sil').
+ */
+public class LexiconTree {
+	// A phoneme in the tree, with the phonemes that follow it and the words that end with it
+	private static class Node {
+		// The id of the phoneme
+		private final int phoneme;
+		private final Map<Integer,Node> children = new LinkedHashMap<Integer,Node>();
+		private final List<Integer> wordIndices = new ArrayList<Integer>();
+		private HMM model;
+		
+		private Node( int phoneme ) {
+			this.phoneme = phoneme;
+		}
+		
+		private Node getChild( int childPhoneme ) {
+			Node child = children.get( childPhoneme );
+			if( child == null ) {
+				child = new Node( childPhoneme );
+				children.put( childPhoneme, child );
+			}
+			return child;
+		}
+	}
+	
+	private final Lexicon theLexicon;
+	private final PhonemeCollection thePhonemes;
+	// The id of the 'sil' phoneme
+	private final int silId;
+	private final HMM theAutomaton;
+	// All states of theAutomaton, the index in the list is the statenumber; head first and tail last
+	private final List<State> theStateList = new ArrayList<State>();
+	// Index of the word of each state in theStateList, -1 for states shared by words
+	private final List<Integer> theWordIndices = new ArrayList<Integer>();
+	
+	public LexiconTree( Lexicon aLexicon, PhonemeCollection phonemes ) {
+		this.theLexicon = aLexicon;
+		this.thePhonemes = phonemes;
+		
+		// Build the tree of phonemes, starting with the shared 'sil'
+		this.silId = phonemes.getPhonemeId( "sil" );
+		if( silId < 0 )
+			throw new IllegalArgumentException( "Phoneme 'sil' is not in the phoneme collection" );
+		List<Word> words = aLexicon.getWords();
+		if( words.isEmpty() )
+			throw new IllegalArgumentException( "The lexicon has no words" );
+		Node root = new Node( silId );
+		for( int wordIndex = 0; wordIndex < words.size(); wordIndex++ ) {
+			Node node = root;
+			for( int wordPhoneme : words.get( wordIndex ).getPhonemeIds() ) {
+				node = node.getChild( wordPhoneme );
+			}
+			node.wordIndices.add( wordIndex );
+		}
+		
+		// Create a head and tail nonemitting state, and the states of all phonemes in between
+		State head = new State();
+		State tail = new State();
+		theAutomaton = new HMM( "Viterbi Prefix Tree" );
+		theAutomaton.appendState( head );
+		addState( head, -1 );
+		
+		createStates( root, tail );
+		// Every word is equally likely
+		head.addTransition( -Math.log( words.size() ), root.model.getFirstState() );
+		
+		addState( tail, -1 );
+		theAutomaton.setLastState( tail );
+		theAutomaton.setReadNumberOfStates( theStateList.size() );
+	}
+	
+	/**
+	 * Creates the states of the node and its descendants, and connects the exit of the node to them
+	 * @param <b>node</b> The node to create the states for
+	 * @param <b>tail</b> The tail of the automaton, where the trailing 'sil' of every word ends
+	 */
+	private void createStates( Node node, State tail ) {
+		node.model = createPhoneme( node.phoneme, -1 );
+		Transition exit = node.model.getTailConnectTransition();
+		
+		for( Node child : node.children.values() ) {
+			createStates( child, tail );
+			connect( node.model, exit, child.model.getFirstState() );
+		}
+		for( int wordIndex : node.wordIndices ) {
+			HMM trailingSil = createPhoneme( silId, wordIndex );
+			trailingSil.getTailConnectTransition().setNextState( tail );
+			connect( node.model, exit, trailingSil.getFirstState() );
+		}
+	}
+	
+	/**
+	 * Connects the exit of a phoneme to a following state. The first following state gets the exit transition itself,
+	 * the others get a copy of it.
+	 */
+	private void connect( HMM phonemeModel, Transition exit, State nextState ) {
+		if( exit.getNextState() == null )
+			exit.setNextState( nextState );
+		else
+			phonemeModel.getLastState().addTransition( exit.getProbability(), nextState );
+	}
+	
+	/**
+	 * Copies the emitting states of a phoneme into a new HMM and numbers them
+	 * @param <b>phoneme</b> The id of the phoneme
+	 * @param <b>wordIndex</b> The index of the word the states belong to, or -1 when shared
+	 */
+	private HMM createPhoneme( int phoneme, int wordIndex ) {
+		HMM phonemeModel = thePhonemes.getPhoneme( phoneme );
+		
+		HMM copy = new HMM( phonemeModel.getName() );
+		theLexicon.appendAndCopyStatesPhonemeToModel( phonemeModel, copy );
+		
+		State state = copy.getFirstState();
+		while( state != null ) {
+			addState( state, wordIndex );
+			state = state.getNextState();
+		}
+		return copy;
+	}
+	
+	private void addState( State state, int wordIndex ) {
+		state.setStateNumber( theStateList.size() );
+		theStateList.add( state );
+		theWordIndices.add( wordIndex );
+	}
+	
+	public HMM getAutomaton() {
+		return this.theAutomaton;
+	}
+	
+	/**
+	 * @return All states of the automaton, ordered by statenumber
+	 */
+	public List<State> getStatesList() {
+		return Collections.unmodifiableList( this.theStateList );
+	}
+	
+	/**
+	 * @return The index of the word for each statenumber, -1 for states not identifying a word
+	 */
+	public int[] getWordIndices() {
+		int[] wordIndices = new int[ theWordIndices.size() ];
+		for( int stateNo = 0; stateNo < wordIndices.length; stateNo++ )
+			wordIndices[ stateNo ] = theWordIndices.get( stateNo );
+		return wordIndices;
+	}
+}
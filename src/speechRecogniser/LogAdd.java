@@ -0,0 +1,42 @@
+package speechRecogniser;
+
+/**
+ * LogAdd adds probabilities in the log domain: log( exp( a ) + exp( b ) ) = max + log( 1 + exp( -( max - min ) ) ).
+ * The correction term only depends on the difference of the arguments, so it is looked up in a table and interpolated
+ * instead of calculating exp and log. Beyond RANGE the correction is below 1e-13 and the larger argument is returned,
+ * so adding a Gaussian far below the best one of a mixture costs only a comparison; the Gaussian itself is still evaluated.
+ */
+final class LogAdd {
+	// Differences of at least RANGE add nothing
+	static final double RANGE = 32;
+	// Number of table entries per unit of difference
+	private static final int RESOLUTION = 128;
+	// The largest error of one addition: the error of linear interpolation, h^2 / 8 * max |f''| with max |f''| = 1/4
+	static final double MAXIMUM_ERROR = 1.0 / ( 32.0 * RESOLUTION * RESOLUTION );
+	// log( 1 + exp( -d ) ) for d = index / RESOLUTION
+	private static final double[] CORRECTIONS = new double[ (int)RANGE * RESOLUTION + 1 ];
+	
+	static {
+		for( int index = 0; index < CORRECTIONS.length; index++ )
+			CORRECTIONS[ index ] = Math.log1p( Math.exp( -(double)index / RESOLUTION ) );
+	}
+	
+	private LogAdd() {
+	}
+	
+	/**
+	 * @return log( exp( a ) + exp( b ) ), within MAXIMUM_ERROR
+	 */
+	static double add( double a, double b ) {
+		double larger = a > b ? a : b;
+		double difference = a > b ? a - b : b - a;
+		// also when both are -Infinity, and the difference is NaN
+		if( !( difference < RANGE ) )
+			return larger;
+		
+		double position = difference * RESOLUTION;
+		int index = (int)position;
+		double correction = CORRECTIONS[ index ] + ( position - index ) * ( CORRECTIONS[ index + 1 ] - CORRECTIONS[ index ] );
+		return larger + correction;
+	}
+}
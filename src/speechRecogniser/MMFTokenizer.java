@@ -0,0 +1,147 @@
+package speechRecogniser;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * The MMFTokenizer splits a HTK master macro file into tokens: keywords like <MEAN>, macro types like ~h,
+ * quoted names and plain words such as numbers. Keywords are returned in upper case, as HTK ignores their case,
+ * and quoted names without their quotes. Keywords need no whitespace around them, HTK writes options like
+ * <VECSIZE> 39<NULLD><MFCC_D_A_0><DIAGC> without it.
+ */
+class MMFTokenizer {
+	private final BufferedReader theReader;
+	private final String theFileName;
+	// The current line, and the position of the next character in it
+	private String theLine = "";
+	private int position;
+	private int lineNumber;
+	// The token returned by the next call of next(), null when not read yet
+	private String thePeekedToken;
+	
+	MMFTokenizer( BufferedReader reader, String fileName ) {
+		this.theReader = reader;
+		this.theFileName = fileName;
+	}
+	
+	/**
+	 * @return The next token without consuming it, null at the end of the file
+	 */
+	String peek() throws IOException {
+		if( thePeekedToken == null )
+			thePeekedToken = readToken();
+		return thePeekedToken;
+	}
+	
+	/**
+	 * @return The next token, null at the end of the file
+	 */
+	String next() throws IOException {
+		String token = peek();
+		thePeekedToken = null;
+		return token;
+	}
+	
+	/**
+	 * @return The next token, which must be there
+	 */
+	String nextRequired( String expected ) throws IOException {
+		String token = next();
+		if( token == null )
+			throw new EOFException( theFileName + ": end of file, expected " + expected );
+		return token;
+	}
+	
+	/**
+	 * Consumes the next token, which must be the keyword
+	 */
+	void expect( String keyword ) throws IOException {
+		String token = nextRequired( keyword );
+		if( !token.equals( keyword ) )
+			throw error( "expected " + keyword + " but found " + token );
+	}
+	
+	int nextInt() throws IOException {
+		String token = nextRequired( "a number" );
+		try {
+			return Integer.parseInt( token );
+		} catch( NumberFormatException e ) {
+			throw error( "expected a whole number but found " + token );
+		}
+	}
+	
+	float nextFloat() throws IOException {
+		String token = nextRequired( "a number" );
+		try {
+			return Float.parseFloat( token );
+		} catch( NumberFormatException e ) {
+			throw error( "expected a number but found " + token );
+		}
+	}
+	
+	double nextDouble() throws IOException {
+		String token = nextRequired( "a number" );
+		try {
+			return Double.parseDouble( token );
+		} catch( NumberFormatException e ) {
+			throw error( "expected a number but found " + token );
+		}
+	}
+	
+	/**
+	 * @return An exception for a syntax error at the current line
+	 */
+	IOException error( String message ) {
+		return new IOException( theFileName + ":" + lineNumber + ": " + message );
+	}
+	
+	static boolean isKeyword( String token ) {
+		return token != null && token.startsWith( "<" );
+	}
+	
+	static boolean isMacro( String token ) {
+		return token != null && token.length() == 2 && token.charAt( 0 ) == '~';
+	}
+	
+	private String readToken() throws IOException {
+		while( true ) {
+			while( position < theLine.length() && Character.isWhitespace( theLine.charAt( position ) ) )
+				position++;
+			if( position < theLine.length() )
+				break;
+			theLine = theReader.readLine();
+			if( theLine == null ) {
+				theLine = "";
+				return null;
+			}
+			position = 0;
+			lineNumber++;
+		}
+		
+		int start = position;
+		char first = theLine.charAt( position );
+		if( first == '<' ) {
+			int end = theLine.indexOf( '>', position );
+			if( end < 0 )
+				throw error( "unterminated keyword " + theLine.substring( start ) );
+			position = end + 1;
+			return theLine.substring( start, position ).toUpperCase();
+		}
+		if( first == '"' ) {
+			int end = theLine.indexOf( '"', position + 1 );
+			if( end < 0 )
+				throw error( "unterminated name " + theLine.substring( start ) );
+			position = end + 1;
+			return theLine.substring( start + 1, end );
+		}
+		if( first == '~' && position + 1 < theLine.length() && Character.isLetter( theLine.charAt( position + 1 ) ) ) {
+			position += 2;
+			return theLine.substring( start, position );
+		}
+		while( position < theLine.length() && !Character.isWhitespace( theLine.charAt( position ) )
+				&& theLine.charAt( position ) != '<' && theLine.charAt( position ) != '"' )
+			position++;
+		return theLine.substring( start, position );
+	}
+}
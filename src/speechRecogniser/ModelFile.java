@@ -0,0 +1,242 @@
+package speechRecogniser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import speechRecogniser.entity.Word;
+import speechRecogniser.hmm.DecodingGraph;
+
+/**
+ * The ModelFile stores a CompiledModel in a binary file, so the recogniser can start without parsing the HMMs
+ * and lexicon and composing the automaton again. The file holds what decoding needs, all big-endian:
+ *
+ *   magic "SRCM", format version
+ *   phonemes:  number, names
+ *   Gaussians: vector size, first component of every state, means, -1 / ( 2 variance ),
+ *              log-weights plus logNormalisers, as precalculated by the EmissionScorer
+ *   graph:     successor offsets, successors, log-probabilities and emission indices of the DecodingGraph,
+ *              the transition matrices of the phonemes are in the transitions of the graph
+ *   words:     number, name and phoneme ids of each word in lexicon order, the word index of every state
+ *
+ * Strings are an int length followed by UTF-8 bytes, arrays an int length followed by the values.
+ * The file is memory-mapped when read, and the arrays are copied out of the mapping in bulk.
+ * A file of another version is rejected; compile the model again after upgrading.
+ * The file is written next to its target and moved over it when complete, so a recogniser reloading the model
+ * while it is compiled reads either the old or the new file, never a part of one.
+ */
+public class ModelFile {
+	// "SRCM", the first 4 bytes of every model file
+	private static final int MAGIC = 0x5352434D;
+	// Version of the format, changed whenever the layout changes
+	public static final int VERSION = 2;
+
+	/**
+	 * Writes a model to a file, atomically replacing the file when it exists
+	 * @param <b>model</b> The model to write
+	 * @param <b>file</b> The file to write to
+	 */
+	public static void write( CompiledModel model, Path file ) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Path temporaryFile = Files.createTempFile( directory, file.getFileName() + ".", ".tmp" );
+		boolean written = false;
+
+		try {
+			writeModel( model, temporaryFile );
+			Files.move( temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+			written = true;
+		} finally {
+			if( !written )
+				Files.deleteIfExists( temporaryFile );
+		}
+	}
+
+	private static void writeModel( CompiledModel model, Path file ) throws IOException {
+		DataOutputStream output = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( file ) ) );
+
+		try {
+			output.writeInt( MAGIC );
+			output.writeInt( VERSION );
+
+			SymbolTable phonemes = model.getPhonemeSymbols();
+			output.writeInt( phonemes.size() );
+			for( int id = 0; id < phonemes.size(); id++ )
+				writeString( output, phonemes.getSymbol( id ) );
+
+			EmissionScorer scorer = model.getEmissionScorer();
+			output.writeInt( scorer.getVectorSize() );
+			writeInts( output, scorer.getComponentOffsets() );
+			writeDoubles( output, scorer.getMeans() );
+			writeDoubles( output, scorer.getScaledPrecisions() );
+			writeDoubles( output, scorer.getConstants() );
+
+			DecodingGraph graph = model.getGraph();
+			writeInts( output, graph.getSuccessorOffsets() );
+			writeInts( output, graph.getSuccessors() );
+			writeDoubles( output, graph.getProbabilities() );
+			writeInts( output, graph.getEmissionIndices() );
+
+			List<Word> words = model.getLexicon().getWords();
+			output.writeInt( words.size() );
+			for( Word word : words ) {
+				writeString( output, word.getWord() );
+				writeInts( output, word.getPhonemeIds() );
+			}
+			writeInts( output, model.getWordIndices() );
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Reads a model from a file
+	 * @param <b>file</b> A file written by write
+	 * @return The model, ready to decode
+	 * @throws IOException When the file cannot be read, is not a model file, or has another version
+	 */
+	public static CompiledModel read( Path file ) throws IOException {
+		FileChannel channel = FileChannel.open( file, StandardOpenOption.READ );
+
+		try {
+			if( channel.size() > Integer.MAX_VALUE )
+				throw new IOException( file + " is too large for a model file" );
+			ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+
+			if( buffer.remaining() < 8 || buffer.getInt() != MAGIC )
+				throw new IOException( file + " is not a compiled model file" );
+			int version = buffer.getInt();
+			if( version != VERSION )
+				throw new IOException( file + " has model file version " + version + ", expected " + VERSION + "; compile the model again" );
+
+			SymbolTable phonemes = new SymbolTable();
+			int numberOfPhonemes = buffer.getInt();
+			for( int id = 0; id < numberOfPhonemes; id++ )
+				phonemes.intern( readString( buffer ) );
+
+			int vectorSize = buffer.getInt();
+			int[] componentOffsets = readInts( buffer );
+			double[] means = readDoubles( buffer );
+			double[] scaledPrecisions = readDoubles( buffer );
+			double[] constants = readDoubles( buffer );
+			EmissionScorer scorer = new EmissionScorer( vectorSize, componentOffsets, means, scaledPrecisions, constants );
+
+			int[] successorOffsets = readInts( buffer );
+			int[] successors = readInts( buffer );
+			double[] probabilities = readDoubles( buffer );
+			int[] emissionIndices = readInts( buffer );
+			for( int emissionIndex : emissionIndices ) {
+				if( emissionIndex < -1 || emissionIndex >= scorer.getNumberOfStates() )
+					throw new IOException( file + " is not a valid model file: emission index " + emissionIndex + " of " + scorer.getNumberOfStates() + " emitting states" );
+			}
+			DecodingGraph graph = new DecodingGraph( successorOffsets, successors, probabilities, emissionIndices );
+
+			// The ids of the words are assigned in lexicon order, as they were when the model was compiled
+			SymbolTable wordSymbols = new SymbolTable();
+			List<Word> words = new ArrayList<Word>();
+			int numberOfWords = buffer.getInt();
+			for( int index = 0; index < numberOfWords; index++ ) {
+				String name = readString( buffer );
+				int[] phonemeIds = readInts( buffer );
+				List<String> transcription = new ArrayList<String>( phonemeIds.length );
+				for( int phonemeId : phonemeIds )
+					transcription.add( phonemes.getSymbol( phonemeId ) );
+				words.add( new Word( wordSymbols.intern( name ), name, transcription, phonemeIds ) );
+			}
+			int[] wordIndices = readInts( buffer );
+			for( int wordIndex : wordIndices ) {
+				if( wordIndex < -1 || wordIndex >= words.size() )
+					throw new IOException( file + " is not a valid model file: word index " + wordIndex + " of " + words.size() + " words" );
+			}
+
+			return new CompiledModel( phonemes, new Lexicon( words ), graph, wordIndices, scorer );
+		} catch( BufferUnderflowException e ) {
+			throw new EOFException( file + " ends before the model is complete" );
+		} catch( IllegalArgumentException e ) {
+			throw new IOException( file + " is not a valid model file: " + e.getMessage() );
+		} catch( IndexOutOfBoundsException e ) {
+			// a phoneme id out of range
+			throw new IOException( file + " is not a valid model file: " + e.getMessage() );
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return Whether the file starts like a model file; false when it cannot be read
+	 * @param <b>file</b> The file to check
+	 */
+	public static boolean isModelFile( Path file ) {
+		try {
+			FileChannel channel = FileChannel.open( file, StandardOpenOption.READ );
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate( 4 );
+				while( buffer.hasRemaining() && channel.read( buffer ) >= 0 );
+				return !buffer.hasRemaining() && buffer.getInt( 0 ) == MAGIC;
+			} finally {
+				channel.close();
+			}
+		} catch( IOException e ) {
+			return false;
+		}
+	}
+
+	private static void writeString( DataOutputStream output, String value ) throws IOException {
+		byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+		output.writeInt( bytes.length );
+		output.write( bytes );
+	}
+
+	private static void writeInts( DataOutputStream output, int[] values ) throws IOException {
+		output.writeInt( values.length );
+		for( int value : values )
+			output.writeInt( value );
+	}
+
+	private static void writeDoubles( DataOutputStream output, double[] values ) throws IOException {
+		output.writeInt( values.length );
+		for( double value : values )
+			output.writeDouble( value );
+	}
+
+	private static String readString( ByteBuffer buffer ) throws IOException {
+		byte[] bytes = new byte[ readLength( buffer, 1 ) ];
+		buffer.get( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	private static int[] readInts( ByteBuffer buffer ) throws IOException {
+		int[] values = new int[ readLength( buffer, 4 ) ];
+		buffer.asIntBuffer().get( values );
+		buffer.position( buffer.position() + 4 * values.length );
+		return values;
+	}
+
+	private static double[] readDoubles( ByteBuffer buffer ) throws IOException {
+		double[] values = new double[ readLength( buffer, 8 ) ];
+		buffer.asDoubleBuffer().get( values );
+		buffer.position( buffer.position() + 8 * values.length );
+		return values;
+	}
+
+	/**
+	 * Reads the length of an array, and checks that its values fit in the rest of the file
+	 * @param <b>valueSize</b> The size of a value in bytes
+	 */
+	private static int readLength( ByteBuffer buffer, int valueSize ) throws IOException {
+		int length = buffer.getInt();
+		if( length < 0 || (long)length * valueSize > buffer.remaining() )
+			throw new EOFException( "Array of " + length + " values does not fit in the model file" );
+		return length;
+	}
+}
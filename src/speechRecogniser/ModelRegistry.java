@@ -0,0 +1,271 @@
+package speechRecogniser;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import speechRecogniser.entity.Stage;
+
+/**
+ * The ModelRegistry holds the CompiledModel a running recogniser decodes with, and replaces it without stopping:
+ * reload() builds a new model on a background thread, and swaps it in atomically once it is complete.
+ * 
+ * A decode acquires a Lease on the current model and closes it when it is done, so a decode keeps the model it started
+ * with when a new one is swapped in. Every model counts its leases, plus one for the registry while it is current;
+ * when the count of an old model drops to zero it is released: the registry drops it, the Listeners are told,
+ * so they can drop their references to it as well, and the garbage collector can take it.
+ * 
+ * The time of every reload, the heap in use before it, and the peak of the heap while the new model was loaded next to
+ * the current one, are written to the error output and kept for the ModelRegistryMBean.
+ */
+public class ModelRegistry implements ModelRegistryMBean {
+	/**
+	 * A Listener is told when a model is released, so it can drop objects built for that model
+	 */
+	public interface Listener {
+		void released( CompiledModel model, int version );
+	}
+	
+	/**
+	 * A Lease keeps a model from being released while a decode uses it; close it when the decode is done
+	 */
+	public class Lease implements AutoCloseable {
+		private final Entry theEntry;
+		private boolean closed;
+		
+		private Lease( Entry anEntry ) {
+			this.theEntry = anEntry;
+		}
+		
+		public CompiledModel getModel() {
+			return theEntry.model;
+		}
+		
+		public int getVersion() {
+			return theEntry.version;
+		}
+		
+		public void close() {
+			if( !closed ) {
+				closed = true;
+				release( theEntry );
+			}
+		}
+	}
+	
+	// A model with its version and count of users
+	private static class Entry {
+		final CompiledModel model;
+		final int version;
+		// Leases plus one for the registry while the model is current; 0 once released
+		final AtomicInteger users = new AtomicInteger( 1 );
+		
+		Entry( CompiledModel aModel, int aVersion ) {
+			this.model = aModel;
+			this.version = aVersion;
+		}
+		
+		/**
+		 * @return Whether a user was added; false when the model was released already
+		 */
+		boolean retain() {
+			int count;
+			do {
+				count = users.get();
+				if( count == 0 )
+					return false;
+			} while( !users.compareAndSet( count, count + 1 ) );
+			return true;
+		}
+	}
+	
+	private final AtomicReference<Entry> theCurrent;
+	private final AtomicInteger theLastVersion = new AtomicInteger( 1 );
+	private final AtomicInteger theResidentModels = new AtomicInteger( 1 );
+	private final RecogniserMetrics theMetrics;
+	private final CopyOnWriteArrayList<Listener> theListeners = new CopyOnWriteArrayList<Listener>();
+	// Loads the models one at a time
+	private final ExecutorService theLoader;
+	// Reports of the reloads
+	private final AtomicInteger theReloads = new AtomicInteger();
+	private final AtomicInteger theFailedReloads = new AtomicInteger();
+	private volatile long lastReloadNanos;
+	private volatile long heapUsedBeforeReload;
+	private volatile long heapPeakDuringReload;
+	private volatile String lastError;
+	
+	/**
+	 * @param <b>aModel</b> The model to start with, version 1
+	 * @param <b>metrics</b> The metrics to record the time of loading models in
+	 */
+	public ModelRegistry( CompiledModel aModel, RecogniserMetrics metrics ) {
+		this.theCurrent = new AtomicReference<Entry>( new Entry( aModel, 1 ) );
+		this.theMetrics = metrics;
+		this.theLoader = Executors.newSingleThreadExecutor( new ThreadFactory() {
+			public Thread newThread( Runnable task ) {
+				Thread thread = new Thread( task, "model loader" );
+				thread.setDaemon( true );
+				thread.setPriority( Thread.MIN_PRIORITY );
+				return thread;
+			}
+		} );
+	}
+	
+	public void addListener( Listener listener ) {
+		theListeners.add( listener );
+	}
+	
+	/**
+	 * @return A lease on the current model, which must be closed when the decode is done
+	 */
+	public Lease acquire() {
+		while( true ) {
+			Entry current = theCurrent.get();
+			// fails only when the model was swapped out and released since it was read
+			if( current.retain() )
+				return new Lease( current );
+		}
+	}
+	
+	/**
+	 * Loads a new model in the background, and makes it the current model when it is complete.
+	 * Reloads run one after another; when loading fails, the current model stays.
+	 * @param <b>loader</b> Loads and compiles the model, on the loader thread
+	 * @return The future version of the new model, failing with the exception of the loader
+	 */
+	public Future<Integer> reload( final Callable<CompiledModel> loader ) {
+		return theLoader.submit( new Callable<Integer>() {
+			public Integer call() throws Exception {
+				long heapBefore = getHeapUsed();
+				resetHeapPeak();
+				long start = System.nanoTime();
+				CompiledModel model;
+				try {
+					model = loader.call();
+				} catch( Exception e ) {
+					theFailedReloads.incrementAndGet();
+					lastError = e.toString();
+					System.err.println( "Reloading the model failed, version " + getVersion() + " stays: " + e );
+					throw e;
+				}
+				long loadNanos = System.nanoTime() - start;
+				theMetrics.record( Stage.MODEL_LOAD, loadNanos );
+				
+				Entry next = new Entry( model, theLastVersion.incrementAndGet() );
+				theResidentModels.incrementAndGet();
+				long heapPeak = getHeapPeak();
+				Entry previous = theCurrent.getAndSet( next );
+				
+				lastReloadNanos = loadNanos;
+				heapUsedBeforeReload = heapBefore;
+				heapPeakDuringReload = heapPeak;
+				theReloads.incrementAndGet();
+				System.err.println( String.format( "Model version %d loaded in %.1f ms and swapped in; heap in use %d MB before, peak %d MB while loading next to version %d.",
+						next.version, loadNanos * 1e-6, heapBefore >> 20, heapPeak >> 20, previous.version ) );
+				
+				// The registry no longer uses the previous model, decodes still holding a lease keep it
+				release( previous );
+				return next.version;
+			}
+		} );
+	}
+	
+	/**
+	 * Removes a user of a model, and releases the model when it was the last one
+	 */
+	private void release( Entry anEntry ) {
+		if( anEntry.users.decrementAndGet() != 0 )
+			return;
+		theResidentModels.decrementAndGet();
+		for( Listener listener : theListeners )
+			listener.released( anEntry.model, anEntry.version );
+		System.err.println( "Model version " + anEntry.version + " released." );
+	}
+	
+	private static long getHeapUsed() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+	
+	private static void resetHeapPeak() {
+		for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+			if( pool.getType() == MemoryType.HEAP )
+				pool.resetPeakUsage();
+		}
+	}
+	
+	/**
+	 * @return The sum of the peaks of the heap pools since resetHeapPeak; the pools may peak at different times,
+	 * so this is an upper bound of the heap in use at any one time
+	 */
+	private static long getHeapPeak() {
+		long peak = 0;
+		for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+			if( pool.getType() == MemoryType.HEAP )
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+	
+	/**
+	 * Registers the MBean of the registry with the platform MBean server, replacing the MBean of another registry
+	 * @throws JMException When the MBean cannot be registered
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName( "speechRecogniser", "type", "ModelRegistry" );
+		if( server.isRegistered( name ) )
+			server.unregisterMBean( name );
+		server.registerMBean( this, name );
+	}
+	
+	/**
+	 * Stops the loader thread; a reload in progress is finished but not swapped in when the process exits first
+	 */
+	public void shutdown() {
+		theLoader.shutdown();
+	}
+	
+	public int getVersion() {
+		return theCurrent.get().version;
+	}
+	
+	public int getResidentModels() {
+		return theResidentModels.get();
+	}
+	
+	public int getReloads() {
+		return theReloads.get();
+	}
+	
+	public int getFailedReloads() {
+		return theFailedReloads.get();
+	}
+	
+	public double getLastReloadMillis() {
+		return lastReloadNanos * 1e-6;
+	}
+	
+	public long getHeapUsedBeforeReload() {
+		return heapUsedBeforeReload;
+	}
+	
+	public long getHeapPeakDuringReload() {
+		return heapPeakDuringReload;
+	}
+	
+	public String getLastError() {
+		return lastError;
+	}
+}
@@ -0,0 +1,41 @@
+package speechRecogniser;
+
+/**
+ * The JMX view on the models of a ModelRegistry, registered as speechRecogniser:type=ModelRegistry
+ */
+public interface ModelRegistryMBean {
+	/**
+	 * @return The version of the model new decodes use, 1 for the model the registry started with
+	 */
+	int getVersion();
+	
+	/**
+	 * @return The number of models not yet released: the current one, and older ones still used by decodes
+	 */
+	int getResidentModels();
+	
+	int getReloads();
+	
+	int getFailedReloads();
+	
+	/**
+	 * @return The time the last successful reload took to load and compile the model
+	 */
+	double getLastReloadMillis();
+	
+	/**
+	 * @return The heap in use before the last successful reload started
+	 */
+	long getHeapUsedBeforeReload();
+	
+	/**
+	 * @return The peak of the heap while the last reloaded model was loaded, with the old model still resident:
+	 * the sum of the peaks of the heap pools
+	 */
+	long getHeapPeakDuringReload();
+	
+	/**
+	 * @return The message of the last failed reload, null when none failed
+	 */
+	String getLastError();
+}
@@ -20,6 +20,36 @@ public class OutputVerifier {
 		parseVerificationFile( aVerificationFile );
 	}
 	
+	private OutputVerifier() {
+	}
+	
+	/**
+	 * Reads the label-file of an observation input file without writing to the output, so it can be read on another thread
+	 * Assumes the "file" to be in label/"file".lab
+	 * @param <b>aVerificationFile</b> The name of the observation input file
+	 * @return The verifier, with no spoken word when the label-file is empty
+	 * @throws IOException When the label-file cannot be read
+	 */
+	public static OutputVerifier read( String aVerificationFile ) throws IOException {
+		OutputVerifier theOutputVerifier = new OutputVerifier();
+		theOutputVerifier.theVerificationFile = "label/" + aVerificationFile + ".lab";
+		BufferedReader inputStream = new BufferedReader( new FileReader( theOutputVerifier.theVerificationFile ) );
+		
+		try {
+			theOutputVerifier.theSpokenWord = inputStream.readLine();
+		} finally {
+			inputStream.close();
+		}
+		return theOutputVerifier;
+	}
+	
+	/**
+	 * @return The word spoken in the observation, null when it is not known
+	 */
+	public String getSpokenWord() {
+		return this.theSpokenWord;
+	}
+	
 	/**
 	 * Parses the label-file and outputs the verification
 	 * Assumes the "file" to be in label/"file".lab
@@ -48,6 +78,6 @@ public class OutputVerifier {
 	}
 	
 	public boolean matchWord( Word recognisedWord ) {
-		return recognisedWord.getWord().equals( theSpokenWord );
+		return recognisedWord != null && recognisedWord.getWord().equals( theSpokenWord );
 	}
 }
@@ -4,166 +4,450 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.StringTokenizer;
+import java.util.Map;
 
-import speechRecogniser.entity.FeatureVector;
 import speechRecogniser.hmm.*;
 
 /**
  * The PhonemeCollection contains all phonemes the Recogniser can distinguish
  * Each phoneme is a HMM as parsed from the (hmms.mmf) configuration file.
  * All (transition-)probabilities are log-probabilities
- * The SignalProcessor sets all emission probabilities.
+ * Each emitting state is numbered with an emission index; the emission probabilities
+ * for an Observation are calculated per index into a buffer of the decoder, the states are not changed.
+ * The names of the phonemes are interned in a SymbolTable: the id of a phoneme is its index in the collection.
+ * 
+ * The file may use the HTK macros ~s (state), ~m (Gaussian), ~u (mean), ~v (variance) and ~t (transition matrix)
+ * to share definitions between phonemes. A macro is parsed once into a shared object: the states of all phonemes
+ * using the same ~s macro have the same emission index, so a tied state is stored and scored once per timeslice,
+ * and the other macros share their vectors and matrices. A phoneme may have any number of states.
+ * Emission indices are assigned when the whole file is parsed, only to the states of the phonemes in the collection:
+ * a ~s macro no phoneme uses, or a phoneme defined twice, costs no emission scoring.
  * @author Zeeger Lubsen
  *
  */
 public class PhonemeCollection {
-	// List containing all phonemes as a HMM
+	// List containing all phonemes as a HMM, the index in the list is the id of the phoneme
 	private List<HMM> theCollection;
+	// The names of the phonemes
+	private SymbolTable thePhonemeSymbols;
+	// List containing all emitting states of the phonemes, the index in the list is the emission index of the state
+	private List<State> theEmittingStates;
+	// The macros by name: the emitting state of each ~s, the Gaussian of each ~m, the vector of each ~u and ~v,
+	// and the log-probability matrix of each ~t
+	private Map<String,State> theStateMacros;
+	private Map<String,Gaussian> theGaussianMacros;
+	private Map<String,float[]> theMeanMacros;
+	private Map<String,float[]> theVarianceMacros;
+	private Map<String,double[][]> theTransitionMacros;
+	// The ~s macro state of every tied state of a phoneme
+	private Map<State,State> theTiedStates;
 
 	public PhonemeCollection( String aHMMInputFile ) {
-		parsePhonemeFile( aHMMInputFile );
+		try {
+			parsePhonemeFile( aHMMInputFile );
+		} catch (FileNotFoundException e) {
+			System.err.println( "File '" + aHMMInputFile + "' not found!" );
+			System.err.println( "Cannot built Lexicon. Exiting." );
+			System.exit( 0 );
+		} catch (IOException e) {
+			System.err.println( "Cannot parse " + aHMMInputFile + ": " + e.getMessage() );
+			System.err.println( "Cannot built Lexicon. Exiting." );
+			System.exit( 1 );
+		}
+	}
+	
+	private PhonemeCollection() {
+	}
+	
+	/**
+	 * Parses a configuration file like the constructor, but leaves errors to the caller instead of exiting,
+	 * for loading a model into a running recogniser
+	 * @param <b>aHMMInputFile</b> Filename of the input file
+	 * @throws IOException When the file cannot be read or parsed
+	 */
+	public static PhonemeCollection read( String aHMMInputFile ) throws IOException {
+		PhonemeCollection phonemes = new PhonemeCollection();
+		phonemes.parsePhonemeFile( aHMMInputFile );
+		return phonemes;
 	}
 
 	/**
 	 * Parses a configuration file (description of trained recogniser)
 	 * @param <b>aHMMInputFile</b> Filename of the input file
 	 */ 
-	private void parsePhonemeFile( String aHMMInputFile ) {
+	private void parsePhonemeFile( String aHMMInputFile ) throws IOException {
 		BufferedReader inputStream = null;
-		StringTokenizer tokenizer = null;
-		String theReadLine = null;
-		HMM currentPhoneme = null;
-		State currentState = null;
-		
 		
 		this.theCollection = new ArrayList<HMM>();
+		this.thePhonemeSymbols = new SymbolTable();
+		this.theEmittingStates = new ArrayList<State>();
+		this.theStateMacros = new HashMap<String,State>();
+		this.theGaussianMacros = new HashMap<String,Gaussian>();
+		this.theMeanMacros = new HashMap<String,float[]>();
+		this.theVarianceMacros = new HashMap<String,float[]>();
+		this.theTransitionMacros = new HashMap<String,double[][]>();
+		this.theTiedStates = new HashMap<State,State>();
 		
 		try {
 			inputStream = new BufferedReader( new FileReader( aHMMInputFile ) );
-
-			// read each line in the file
-			// match each section and parse/evaluate the contents of the section 
-			while( ( theReadLine = inputStream.readLine() ) != null ) {
-				tokenizer = new StringTokenizer( theReadLine );
-				String sectionWord = tokenizer.nextToken();
+			MMFTokenizer tokenizer = new MMFTokenizer( inputStream, aHMMInputFile );
+			
+			// parse each macro in the file
+			String macroType;
+			while( ( macroType = tokenizer.next() ) != null ) {
+				if( macroType.equals( "~o" ) ) {
+					parseGlobalOptions( tokenizer );
+					continue;
+				}
+				if( !MMFTokenizer.isMacro( macroType ) )
+					throw tokenizer.error( "expected a macro but found " + macroType );
+				String macroName = tokenizer.nextRequired( "a macro name" );
 				
-				if( sectionWord.equals( "~h" ) ) {
-					// Construct a new Phoneme with the parsed name
-					String phonemeName = tokenizer.nextToken();
-					phonemeName = phonemeName.substring( 1, phonemeName.length()-1 );
-					
-					currentPhoneme = new HMM( phonemeName );
-				} else if( sectionWord.equals( "<BEGINHMM>" ) ) {
-					// Add first, nonemitting, state
-					currentState = new State();
-					currentPhoneme.appendState( currentState );
-					currentState.setStateNumber( 1 );
-					currentState.setPhoneme( currentPhoneme.getName() );
-				} else if( sectionWord.equals( "<NUMSTATES>" ) ) {
-					// Parse the number of states, store in the phoneme, just for debugging or something.
-					currentPhoneme.setReadNumberOfStates(
-							Integer.parseInt( tokenizer.nextToken() )
-							);
-				} else if( sectionWord.equals( "<STATE>" ) ) {
-					// Begin constructing a new State
-					currentState = new State();
-					currentState.setStateNumber( Integer.parseInt( tokenizer.nextToken() ) );
-					currentState.setPhoneme( currentPhoneme.getName() );
-					currentPhoneme.appendState( currentState );
-				} else if( sectionWord.equals( "<MEAN>" ) ) {
-					// Parse State mean vector
-					FeatureVector meanVector = new FeatureVector();
-					
-					theReadLine = inputStream.readLine();
-					tokenizer = new StringTokenizer( theReadLine );
-										
-					while( tokenizer.hasMoreTokens() ) {
-						meanVector.add( Float.parseFloat( tokenizer.nextToken() ) );
-					}
-					
-					currentState.setMean( meanVector );
-				} else if( sectionWord.equals( "<VARIANCE>" ) ) {
-					// Parse State variance vector
-					FeatureVector varianceVector = new FeatureVector();
-					
-					theReadLine = inputStream.readLine();
-					tokenizer = new StringTokenizer( theReadLine );
-										
-					while( tokenizer.hasMoreTokens() ) {
-						varianceVector.add( Float.parseFloat( tokenizer.nextToken() ) );
-					}
-					
-					currentState.setVariance( varianceVector );
-				} else if( sectionWord.equals( "<GCONST>" ) ) {
-					// Parse GCONST value
-					currentState.setGCONSTValue( Double.parseDouble( tokenizer.nextToken() ) );
-				} else if( sectionWord.equals( "<TRANSP>" ) ) {
-					// Finished parsing states, need to insert final nonemitting State
-					currentState = new State();
-					currentPhoneme.appendState( currentState );
-					currentState.setStateNumber( 5 );
-					currentState.setPhoneme( currentPhoneme.getName() );
-					
-					// Parse the Transitionmatrix, set log-probabilities
-					
-					// noStates is always 5, but parse it anyway
-					int noStates = Integer.parseInt( tokenizer.nextToken() );
-					currentPhoneme.setReadNumberOfStates( noStates );
-					
-					State rowState = currentPhoneme.getFirstState();
-					
-					while( rowState != null ) {
-						State colState = currentPhoneme.getFirstState();
-						theReadLine = inputStream.readLine();
-						tokenizer = new StringTokenizer( theReadLine );
-						
-						while( colState != null ) {
-							double probability = Double.parseDouble( tokenizer.nextToken() );
-							probability = Math.log( probability );
-							// log( 0 ) => -Infinity
-							// Only set nonzero transitions
-							if( probability != Double.NEGATIVE_INFINITY ) {
-								rowState.addTransition(
-										probability,
-										colState
-										);
-							}
-							colState = colState.getNextState();
-						}
-						rowState = rowState.getNextState();
-					}
-				} else if( sectionWord.equals( "<ENDHMM>" ) ) {
-					// Add the completed Phoneme to the Collection
-					theCollection.add( currentPhoneme );
-					
-					currentPhoneme = null;
+				if( macroType.equals( "~h" ) ) {
+					addPhoneme( parseHMM( macroName, tokenizer ) );
+				} else if( macroType.equals( "~s" ) ) {
+					theStateMacros.put( macroName, parseStateInfo( macroName, tokenizer ) );
+				} else if( macroType.equals( "~m" ) ) {
+					theGaussianMacros.put( macroName, parseGaussian( tokenizer ) );
+				} else if( macroType.equals( "~u" ) ) {
+					tokenizer.expect( "<MEAN>" );
+					theMeanMacros.put( macroName, parseVector( tokenizer ) );
+				} else if( macroType.equals( "~v" ) ) {
+					tokenizer.expect( "<VARIANCE>" );
+					theVarianceMacros.put( macroName, parseVector( tokenizer ) );
+				} else if( macroType.equals( "~t" ) ) {
+					theTransitionMacros.put( macroName, parseTransitionMatrix( tokenizer ) );
+				} else {
+					throw tokenizer.error( "macro " + macroType + " is not supported" );
 				}
 			}
-		} catch (FileNotFoundException e) {
-			System.err.println( "File '" + aHMMInputFile + "' not found!" );
-			System.err.println( "Cannot built Lexicon. Exiting." );
-			System.exit( 0 );
-		} catch (IOException e) {
-			System.err.println( "IOException while reading " + aHMMInputFile );
+			assignEmissionIndices();
+		} finally {
+			try {
+				if( inputStream != null )
+					inputStream.close();
+			} catch( IOException e ) {
+				// nothing was written
+			}
+		}
+	}
+	
+	/**
+	 * Adds a parsed phoneme to the collection, the first definition of a name counts
+	 */
+	private void addPhoneme( HMM phoneme ) {
+		if( thePhonemeSymbols.contains( phoneme.getName() ) ) {
+			System.err.println( "Phoneme '" + phoneme.getName() + "' is defined twice, ignoring the second definition" );
+		} else {
+			thePhonemeSymbols.intern( phoneme.getName() );
+			theCollection.add( phoneme );
 		}
 	}
 	
+	/**
+	 * Numbers the emitting states of the phonemes in the collection, in the order of the phonemes and their states.
+	 * The tied states of a ~s macro share the index of the macro state, which is numbered once.
+	 */
+	private void assignEmissionIndices() {
+		for( HMM phoneme : theCollection ) {
+			for( State state = phoneme.getFirstState().getNextState(); state != phoneme.getLastState(); state = state.getNextState() ) {
+				State macroState = theTiedStates.get( state );
+				State emittingState = macroState != null ? macroState : state;
+				if( emittingState.getEmissionIndex() < 0 ) {
+					emittingState.setEmissionIndex( theEmittingStates.size() );
+					theEmittingStates.add( emittingState );
+				}
+				state.setEmissionIndex( emittingState.getEmissionIndex() );
+			}
+		}
+		// Only needed while parsing
+		theTiedStates = null;
+	}
+	
+	/**
+	 * Skips global options such as <VECSIZE> 39 and the parameter kind, up to the next macro or <BEGINHMM> or <NUMSTATES>;
+	 * the recogniser takes them from the data
+	 */
+	private void parseGlobalOptions( MMFTokenizer tokenizer ) throws IOException {
+		while( MMFTokenizer.isKeyword( tokenizer.peek() ) && !tokenizer.peek().equals( "<BEGINHMM>" ) && !tokenizer.peek().equals( "<NUMSTATES>" ) ) {
+			String option = tokenizer.next();
+			if( option.equals( "<VECSIZE>" ) || option.equals( "<HMMSETID>" ) ) {
+				tokenizer.next();
+			} else if( option.equals( "<STREAMINFO>" ) ) {
+				int numberOfStreams = tokenizer.nextInt();
+				if( numberOfStreams != 1 )
+					throw tokenizer.error( numberOfStreams + " streams are not supported" );
+				tokenizer.nextInt();
+			}
+		}
+	}
+	
+	/**
+	 * Parses the definition of a phoneme, from <BEGINHMM> up to <ENDHMM>
+	 * @param <b>phonemeName</b> The name of the phoneme
+	 * @return The phoneme: a nonemitting first state, the emitting states and a nonemitting last state
+	 */
+	private HMM parseHMM( String phonemeName, MMFTokenizer tokenizer ) throws IOException {
+		if( tokenizer.peek() != null && tokenizer.peek().equals( "~o" ) )
+			tokenizer.next();
+		tokenizer.expect( "<BEGINHMM>" );
+		parseGlobalOptions( tokenizer );
+		tokenizer.expect( "<NUMSTATES>" );
+		int numberOfStates = tokenizer.nextInt();
+		if( numberOfStates < 3 )
+			throw tokenizer.error( "phoneme '" + phonemeName + "' has " + numberOfStates + " states, it needs an emitting state" );
+		
+		// The states, in the order of their number; the first and last are nonemitting
+		State[] states = new State[ numberOfStates ];
+		states[ 0 ] = new State();
+		states[ numberOfStates - 1 ] = new State();
+		
+		while( tokenizer.peek() != null && tokenizer.peek().equals( "<STATE>" ) ) {
+			tokenizer.next();
+			int stateNumber = tokenizer.nextInt();
+			if( stateNumber < 2 || stateNumber >= numberOfStates || states[ stateNumber - 1 ] != null )
+				throw tokenizer.error( "invalid or repeated state " + stateNumber + " in phoneme '" + phonemeName + "'" );
+			
+			String macro = tokenizer.peek();
+			if( macro != null && macro.equals( "~s" ) ) {
+				// A tied state: a copy of the macro state, which gets the same emission index
+				tokenizer.next();
+				String stateName = tokenizer.nextRequired( "a state name" );
+				State macroState = theStateMacros.get( stateName );
+				if( macroState == null )
+					throw tokenizer.error( "state macro '" + stateName + "' is not defined" );
+				states[ stateNumber - 1 ] = new State( macroState );
+				theTiedStates.put( states[ stateNumber - 1 ], macroState );
+			} else {
+				states[ stateNumber - 1 ] = parseStateInfo( phonemeName, tokenizer );
+			}
+		}
+		
+		HMM phoneme = new HMM( phonemeName );
+		for( int index = 0; index < numberOfStates; index++ ) {
+			if( states[ index ] == null )
+				throw tokenizer.error( "state " + ( index + 1 ) + " of phoneme '" + phonemeName + "' is not defined" );
+			states[ index ].setStateNumber( index + 1 );
+			states[ index ].setPhoneme( phonemeName );
+			phoneme.appendState( states[ index ] );
+		}
+		phoneme.setReadNumberOfStates( numberOfStates );
+		
+		// The transitions
+		double[][] transitions;
+		if( tokenizer.peek() != null && tokenizer.peek().equals( "~t" ) ) {
+			tokenizer.next();
+			String matrixName = tokenizer.nextRequired( "a transition matrix name" );
+			transitions = theTransitionMacros.get( matrixName );
+			if( transitions == null )
+				throw tokenizer.error( "transition matrix macro '" + matrixName + "' is not defined" );
+		} else {
+			transitions = parseTransitionMatrix( tokenizer );
+		}
+		if( transitions.length != numberOfStates )
+			throw tokenizer.error( "transition matrix of size " + transitions.length + " for phoneme '" + phonemeName + "' of " + numberOfStates + " states" );
+		connectStates( phoneme, states, transitions );
+		
+		tokenizer.expect( "<ENDHMM>" );
+		return phoneme;
+	}
+	
+	/**
+	 * Adds the transitions of a phoneme. The phoneme is entered in its first emitting state and left from its last one,
+	 * as words are composed by connecting the last emitting state of a phoneme to the first of the next;
+	 * other transitions out of the first state or into the last state are ignored with a warning.
+	 * @param <b>transitions</b> The log-probabilities of the transitions between the states
+	 */
+	private void connectStates( HMM phoneme, State[] states, double[][] transitions ) {
+		int last = states.length - 1;
+		boolean ignored = false;
+		
+		for( int row = 0; row < last; row++ ) {
+			for( int column = 1; column <= last; column++ ) {
+				// log( 0 ) => -Infinity; Only set nonzero transitions
+				if( transitions[ row ][ column ] == Double.NEGATIVE_INFINITY )
+					continue;
+				if( ( row == 0 && column != 1 ) || ( column == last && row != last - 1 ) ) {
+					ignored = true;
+					continue;
+				}
+				states[ row ].addTransition( transitions[ row ][ column ], states[ column ] );
+			}
+		}
+		if( ignored )
+			System.err.println( "Phoneme '" + phoneme.getName() + "': transitions skipping its first or last emitting state are ignored" );
+	}
+	
+	/**
+	 * Parses the output distribution of an emitting state into a new state; its emission index is assigned
+	 * after parsing, when a phoneme of the collection uses it.
+	 * The distribution is a single Gaussian, or <NUMMIXES> n followed by up to n times <MIXTURE> i weight and a Gaussian;
+	 * HTK leaves out components whose weight dropped to zero, those are not added.
+	 * @param <b>name</b> The name of the phoneme or macro, for debugging
+	 */
+	private State parseStateInfo( String name, MMFTokenizer tokenizer ) throws IOException {
+		int numberOfMixtures = 1;
+		if( tokenizer.peek() != null && tokenizer.peek().equals( "<NUMMIXES>" ) ) {
+			tokenizer.next();
+			numberOfMixtures = tokenizer.nextInt();
+			if( numberOfMixtures < 1 )
+				throw tokenizer.error( "state of '" + name + "' has " + numberOfMixtures + " mixture components" );
+		}
+		
+		List<Gaussian> components = new ArrayList<Gaussian>();
+		List<Double> logWeights = new ArrayList<Double>();
+		if( tokenizer.peek() != null && tokenizer.peek().equals( "<MIXTURE>" ) ) {
+			while( tokenizer.peek() != null && tokenizer.peek().equals( "<MIXTURE>" ) ) {
+				tokenizer.next();
+				int mixture = tokenizer.nextInt();
+				if( mixture < 1 || mixture > numberOfMixtures )
+					throw tokenizer.error( "mixture component " + mixture + " of " + numberOfMixtures + " in a state of '" + name + "'" );
+				double weight = tokenizer.nextDouble();
+				Gaussian gaussian = parseGaussian( tokenizer );
+				if( weight > 0 ) {
+					components.add( gaussian );
+					logWeights.add( Math.log( weight ) );
+				}
+			}
+		} else {
+			components.add( parseGaussian( tokenizer ) );
+			logWeights.add( 0.0 );
+		}
+		if( components.isEmpty() )
+			throw tokenizer.error( "state of '" + name + "' has no mixture component with a nonzero weight" );
+		
+		double[] weights = new double[ logWeights.size() ];
+		for( int index = 0; index < weights.length; index++ )
+			weights[ index ] = logWeights.get( index );
+		
+		State state = new State();
+		state.setPhoneme( name );
+		state.setMixture( components.toArray( new Gaussian[ components.size() ] ), weights );
+		return state;
+	}
+	
+	/**
+	 * Parses a Gaussian: a ~m reference, or a mean and variance, each given inline or as a ~u or ~v reference,
+	 * optionally followed by the GCONST
+	 */
+	private Gaussian parseGaussian( MMFTokenizer tokenizer ) throws IOException {
+		String token = tokenizer.nextRequired( "a mean" );
+		if( token.equals( "~m" ) ) {
+			String gaussianName = tokenizer.nextRequired( "a Gaussian name" );
+			Gaussian gaussian = theGaussianMacros.get( gaussianName );
+			if( gaussian == null )
+				throw tokenizer.error( "Gaussian macro '" + gaussianName + "' is not defined" );
+			return gaussian;
+		}
+		
+		float[] mean;
+		if( token.equals( "~u" ) ) {
+			mean = getMacro( theMeanMacros, "mean", tokenizer );
+		} else if( token.equals( "<MEAN>" ) ) {
+			mean = parseVector( tokenizer );
+		} else {
+			throw tokenizer.error( "expected <MEAN> but found " + token );
+		}
+		
+		float[] variance;
+		token = tokenizer.nextRequired( "a variance" );
+		if( token.equals( "~v" ) ) {
+			variance = getMacro( theVarianceMacros, "variance", tokenizer );
+		} else if( token.equals( "<VARIANCE>" ) ) {
+			variance = parseVector( tokenizer );
+		} else {
+			throw tokenizer.error( "expected <VARIANCE> but found " + token + ", only diagonal covariances are supported" );
+		}
+		if( mean.length != variance.length )
+			throw tokenizer.error( "mean of size " + mean.length + " with a variance of size " + variance.length );
+		
+		double gconst = Double.NaN;
+		if( tokenizer.peek() != null && tokenizer.peek().equals( "<GCONST>" ) ) {
+			tokenizer.next();
+			gconst = tokenizer.nextDouble();
+		}
+		return new Gaussian( mean, variance, gconst );
+	}
+	
+	private float[] getMacro( Map<String,float[]> macros, String kind, MMFTokenizer tokenizer ) throws IOException {
+		String macroName = tokenizer.nextRequired( "a " + kind + " name" );
+		float[] vector = macros.get( macroName );
+		if( vector == null )
+			throw tokenizer.error( kind + " macro '" + macroName + "' is not defined" );
+		return vector;
+	}
+	
+	/**
+	 * Parses a transition matrix, <TRANSP> n followed by n x n probabilities
+	 * @return The log-probabilities, -Infinity for impossible transitions
+	 */
+	private double[][] parseTransitionMatrix( MMFTokenizer tokenizer ) throws IOException {
+		tokenizer.expect( "<TRANSP>" );
+		int numberOfStates = tokenizer.nextInt();
+		double[][] matrix = new double[ numberOfStates ][ numberOfStates ];
+		for( int row = 0; row < numberOfStates; row++ ) {
+			for( int column = 0; column < numberOfStates; column++ ) {
+				matrix[ row ][ column ] = Math.log( tokenizer.nextDouble() );
+			}
+		}
+		return matrix;
+	}
+	
+	/**
+	 * Parses a vector of floats, its size followed by the values
+	 * @return The parsed vector
+	 */
+	private float[] parseVector( MMFTokenizer tokenizer ) throws IOException {
+		float[] vector = new float[ tokenizer.nextInt() ];
+		for( int index = 0; index < vector.length; index++ ) {
+			vector[ index ] = tokenizer.nextFloat();
+		}
+		return vector;
+	}
+	
 	public List<HMM> getPhonemes() {
 		return this.theCollection;
 	}
 	
+	/**
+	 * @return The emitting states of all phonemes, ordered by their emission index
+	 */
+	public List<State> getEmittingStates() {
+		return this.theEmittingStates;
+	}
+	
+	/**
+	 * @return The names of the phonemes, interned as their ids
+	 */
+	public SymbolTable getPhonemeSymbols() {
+		return this.thePhonemeSymbols;
+	}
+	
+	/**
+	 * @return The id of the phoneme labeled name. Returns -1 when it does not exist
+	 * @param <b>name</b> The name of the phoneme
+	 */
+	public int getPhonemeId( String name ) {
+		return thePhonemeSymbols.getId( name );
+	}
+	
+	/**
+	 * @return Returns the phoneme with the id
+	 * @param <b>id</b> The id of the phoneme, as given by getPhonemeId
+	 */
+	public HMM getPhoneme( int id ) {
+		return this.theCollection.get( id );
+	}
+	
 	/**
 	 * @return Returns the phoneme labeled name in theCollection. Returns null when it does not exist
 	 * @param <b>name</b> The name of the phoneme to be returned.
 	 */
 	public HMM getPhoneme( String name ) {
-		for( HMM p : this.theCollection ) {
-			if( p.getName().equals( name ) )
-				return p;
-		}
-		return null;
+		int id = thePhonemeSymbols.getId( name );
+		return id < 0 ? null : this.theCollection.get( id );
 	}
-}
\ No newline at end of file
+}
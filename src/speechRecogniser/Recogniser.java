@@ -1,149 +1,257 @@
 package speechRecogniser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
-import speechRecogniser.entity.BackPointer;
 import speechRecogniser.entity.Observation;
+import speechRecogniser.entity.RecognitionResult;
+import speechRecogniser.entity.Stage;
+import speechRecogniser.entity.UtteranceMetrics;
 import speechRecogniser.entity.Word;
-import speechRecogniser.hmm.*;
+import speechRecogniser.entity.WordHypothesis;
 
 /**
- * The Recogniser tries to recognise the word in the Observation using the Viterbi algorithm
- * It constructs a single HMM from all words in the Lexicon and runs Viterbi on this model
+ * The Recogniser tries to recognise the word in an Observation using the Viterbi algorithm
+ * It searches the DecodingGraph that the CompiledModel constructed from all words in the Lexicon,
+ * with the Search engine selected in its RecogniserSettings: Viterbi columns or token passing.
+ * The CompiledModel is only read, so one Recogniser can decode any number of Observations.
+ * 
+ * Decoding is frame-synchronous, so an utterance can also be streamed: call startUtterance(), pass the feature vectors
+ * to acceptFrames() as they arrive, ask getPartialResult() for the word recognised so far at any time, and call finish()
+ * when the input ends; finishing only takes a single step of the search. decode() does all of this for an Observation.
+ * The result of finish() also ranks the words by the best path through each of them into the tail, as an N-best list,
+ * and holds the UtteranceMetrics: the time spent scoring emissions, searching and backtracking, and the bytes allocated.
+ * 
+ * The search state and emissions of an utterance are kept in buffers owned by the Recogniser, so a Recogniser
+ * must not be shared between threads; use a Recogniser per thread, all sharing the same CompiledModel.
  * @author Zeeger Lubsen
  */
 public class Recogniser {
-	HMM theAutomaton;
-	Lexicon theLexicon;
-	Observation theObservation;
-	Word recognisedWord;
+	// Number of timeslices decode() scores at once
+	private static final int BLOCK_SIZE = 64;
+	// Ranks hypotheses best first
+	private static final Comparator<WordHypothesis> BEST_FIRST = new Comparator<WordHypothesis>() {
+		public int compare( WordHypothesis first, WordHypothesis second ) {
+			return Double.compare( second.getScore(), first.getScore() );
+		}
+	};
+	
+	private final CompiledModel theModel;
+	// The engine searching the DecodingGraph of the model
+	private final Search theSearch;
+	// Number of words in the N-best list
+	private final int nBest;
+	// Whether mixtures are approximated by their best Gaussian
+	private final boolean bestComponentOnly;
+	// Best exit of the search for each word id in the last step, -1 for none
+	private final int[] theBestExits;
+	// Number of expanded states for each timeslice of the utterance
+	private int[] theActiveStates = new int[ 256 ];
+	// Number of timeslices of the utterance accepted so far
+	private int timeslice;
+	// Whether an utterance is started and not finished
+	private boolean decoding;
+	// Emission log-probabilities of the timeslices being accepted, per timeslice per emitting state
+	private double[] theEmissions;
+	// Time spent in the stages of the utterance so far
+	private long theEmissionNanos;
+	private long theSearchNanos;
+	// The time between timeslices of the utterance in 100ns units, 0 when unknown
+	private int theSamplePeriod;
+	// The bytes allocated by the thread when the utterance started
+	private long theStartAllocatedBytes;
 	
-	public Recogniser( Lexicon aLexicon, Observation anObservation ) {
-		this.theLexicon = aLexicon;
-		this.theObservation = anObservation;
-		constructAutomaton( aLexicon );
-		recogniseWord();
+	public Recogniser( CompiledModel aModel ) {
+		this( aModel, new RecogniserSettings() );
 	}
-
-	private void constructAutomaton( Lexicon theLexicon ) {
-		// Create a head and tail nonemitting state
-		int stateCounter = 0;
-		State head, tail;
-		theAutomaton = new HMM( "Viterbi Automaton" );
-		head = new State();
-		theAutomaton.appendState( head );			// also sets statenumber to 1 for head
-		tail = new State();
+	
+	public Recogniser( CompiledModel aModel, RecogniserSettings settings ) {
+		this.theModel = aModel;
+		this.nBest = settings.getNBest();
+		this.bestComponentOnly = settings.isBestComponentOnly();
+		this.theBestExits = new int[ aModel.getLexicon().getWordSymbols().size() ];
+		Arrays.fill( theBestExits, -1 );
+		switch( settings.getEngine() ) {
+			case TOKEN_PASSING:
+				this.theSearch = new TokenPassingSearch( aModel.getGraph(), settings );
+				break;
+			default:
+				this.theSearch = new ViterbiSearch( aModel.getGraph(), settings );
+		}
+	}
+	
+	/**
+	 * @return The model the Recogniser decodes with
+	 */
+	public CompiledModel getModel() {
+		return this.theModel;
+	}
+	
+	/**
+	 * Recognises the word spoken in the Observation.
+	 * @param <b>anObservation</b> The observation to recognise
+	 * @return The result of the recognition, which has no word when nothing matched
+	 */
+	public RecognitionResult decode( Observation anObservation ) {
+		if( anObservation.getVectorSize() != theModel.getEmissionScorer().getVectorSize() )
+			throw new IllegalArgumentException( "Feature vectors of size " + anObservation.getVectorSize()
+					+ ", the model expects " + theModel.getEmissionScorer().getVectorSize() );
+		startUtterance();
+		theSamplePeriod = anObservation.getSamplePeriod();
 		
-		// connect each wordModel in the lexicon through a transition from the head,
-		// and fix the end of the wordModel to the tail of theAutomaton
-		for( Word word : theLexicon.getWords() ) {
-			// Get the HMM that is constructed for each word by the Lexicon 
-			HMM wordModel = word.getModel();
-			// log P(1) => 0; Every word is equally likely in the first non-emitting state of theAutomaton
-			head.addTransition( 0, wordModel.getFirstState() );
-			// Set the last transition of the model to the common non-emitting end-state
-			Transition t = wordModel.getTailConnectTransition();
-			t.setNextState( tail );
-			
-			// count number of added states to set statenumbers for theAutomaton
-			stateCounter += wordModel.getNumberOfStates();
+		int vectorSize = anObservation.getVectorSize();
+		for( int first = 0; first < anObservation.getNumberOfVectors(); first += BLOCK_SIZE ) {
+			int count = Math.min( BLOCK_SIZE, anObservation.getNumberOfVectors() - first );
+			acceptFrames( anObservation.getFeatures(), first * vectorSize, count );
 		}
-		theAutomaton.setReadNumberOfStates( stateCounter + 2 );		// no of states plus head and tail
-		theAutomaton.setLastState( tail );					// not-so-clean hack to set reference to last state, needed for getStateList
+		return finish();
 	}
 	
-	public void recogniseWord() {
-		if( theObservation != null && theAutomaton != null )
-		viterbi( theObservation, theAutomaton );
+	/**
+	 * Starts the search for a new utterance, abandoning an unfinished one
+	 */
+	public void startUtterance() {
+		theStartAllocatedBytes = RecogniserMetrics.getAllocatedBytes();
+		theSearch.start();
+		timeslice = 0;
+		decoding = true;
+		theEmissionNanos = 0;
+		theSearchNanos = 0;
+		theSamplePeriod = 0;
 	}
 	
 	/**
-	 * Implementation of the Viterbi algorithm, performs the actual recognising.
-	 * The algorithms puts all states in the stateGraph in a list to traverse the graph.
-	 *  
-	 * @param <b>observation</b> The observation to match
-	 * @param <b>stateGraph</b> The HMM to reconstruct the observation
+	 * Advances the search over the next timeslices of the utterance
+	 * @param <b>features</b> The array holding the feature vectors, timeslice after timeslice
+	 * @param <b>offset</b> The index of the first feature of the first timeslice in features
+	 * @param <b>numberOfFrames</b> The number of timeslices to accept
 	 */
-	private void viterbi( Observation observation, HMM stateGraph ) {
-		// Get list of states in the stateGraph
-		List<State> stateList = stateGraph.getStatesList();
-		int numberOfStates = stateList.size();
-		// The last state still needs a number...
-		stateGraph.getLastState().setStateNumber( numberOfStates-1 );
-		// Number of timeslices in the observation
-		int observationLength = observation.getFeatureVectors().size();
-
-		// fix start transitions probabilities to match the number of transitions out of the start state
-		// transitions start -> other : log(1/numberOfStates-2) => -log(numberOfStates-2)
-		double startTransitionProbability = -Math.log( numberOfStates-2 );
-		for( Transition t : stateGraph.getFirstState().getTransitions() ) {
-			t.setProbability( startTransitionProbability );
+	public void acceptFrames( float[] features, int offset, int numberOfFrames ) {
+		if( !decoding )
+			throw new IllegalStateException( "No utterance started" );
+		EmissionScorer scorer = theModel.getEmissionScorer();
+		int numberOfEmittingStates = scorer.getNumberOfStates();
+		if( offset < 0 || offset + numberOfFrames * scorer.getVectorSize() > features.length )
+			throw new IndexOutOfBoundsException( numberOfFrames + " frames at " + offset + " exceed " + features.length + " features" );
+		
+		// Score all timeslices at once, reusing the buffer when it is large enough
+		int size = numberOfFrames * numberOfEmittingStates;
+		if( theEmissions == null || theEmissions.length < size )
+			theEmissions = new double[ size ];
+		long start = System.nanoTime();
+		scorer.score( features, offset, numberOfFrames, theEmissions, bestComponentOnly );
+		long scored = System.nanoTime();
+		
+		for( int frame = 0; frame < numberOfFrames; frame++ ) {
+			step( true, frame * numberOfEmittingStates );
 		}
+		theEmissionNanos += scored - start;
+		theSearchNanos += System.nanoTime() - scored;
+	}
+	
+	/**
+	 * Advances the search over the next timeslice of the utterance
+	 * @param <b>featureVector</b> The features of the timeslice
+	 */
+	public void acceptFrame( float[] featureVector ) {
+		if( featureVector.length != theModel.getEmissionScorer().getVectorSize() )
+			throw new IllegalArgumentException( "Feature vector of size " + featureVector.length
+					+ ", the model expects " + theModel.getEmissionScorer().getVectorSize() );
+		acceptFrames( featureVector, 0, 1 );
+	}
+	
+	/**
+	 * @return The number of timeslices accepted for the current utterance
+	 */
+	public int getNumberOfFrames() {
+		return this.timeslice;
+	}
+	
+	/**
+	 * Gives the word that would be recognised if the utterance ended now, without changing the search
+	 * @return The partial result
+	 */
+	public RecognitionResult getPartialResult() {
+		if( !decoding )
+			throw new IllegalStateException( "No utterance started" );
+		int bestStateNo = theSearch.getPartialWordState();
+		Word partialWord = bestStateNo < 0 ? null : theModel.getWordOfState( bestStateNo );
+		return new RecognitionResult( partialWord, Arrays.copyOf( theActiveStates, timeslice ) );
+	}
+	
+	/**
+	 * Ends the utterance, takes the last step of the search into the tail of the automaton
+	 * @return The result of the recognition, which has no word when nothing matched
+	 */
+	public RecognitionResult finish() {
+		if( !decoding )
+			throw new IllegalStateException( "No utterance started" );
+		long start = System.nanoTime();
+		step( false, 0 );
+		decoding = false;
+		long searched = System.nanoTime();
 		
-		// Initialise viterbi and traceback matrices
-		double[][] viterbi = new double[ numberOfStates ][ observationLength + 2 ];
-		BackPointer[][] traceback = new BackPointer[ numberOfStates ][ observationLength + 2 ];
-
-		// init matrix, log P(1) => 0
-		viterbi[ 0 ][ 0 ] = 0;
-		// init the borders of the matrix to zero
-		for( int stateno = 1; stateno < numberOfStates; stateno++ )
-			viterbi[ stateno ][ 0 ] = Double.NEGATIVE_INFINITY;		// log(0) => -Infinity
-	    for( int slice = 1; slice < observationLength + 2; slice++ )
-	    	viterbi[ 0 ][ slice ] = Double.NEGATIVE_INFINITY;		// log(0) => -Infinity
+		int finalStateNo = theSearch.getFinalWordState();
+		Word recognisedWord = finalStateNo < 0 ? null : theModel.getWordOfState( finalStateNo );
+		List<WordHypothesis> nBest = rankWords();
+		long finished = System.nanoTime();
 		
-		for( int timeslice = 0; timeslice <= observationLength; timeslice++ ) {			// for each time step t from 0 to T do
-			for( State state : stateList ) {											// for each state s from 0 to num-states do
-				for( Transition t : state.getTransitions() ) {							// for each transmission s' from s specified by state-graph
-					int stateNo = state.getStateNumber();								// s
-					int nextStateNo = t.getNextState().getStateNumber();				// s'
-					int nextTimeSlice = timeslice + 1;									// t+1
-					
-					double previousPathProb = viterbi[ stateNo ][ timeslice ];			// viterbi[ s, t ]
-					double transProb = t.getProbability();								// a[ s, s' ]
-					double obsLikelihood = t.getNextState().getEmission( timeslice /*+1*/);	// Bs'[ Ot ]
-					double newScore = previousPathProb + transProb + obsLikelihood;		// = viterbi[ s, t ]) + a[ s, s' ] + Bs'[ Ot ]
-					double oldScore = viterbi[ nextStateNo ][ nextTimeSlice ];			// viterbi[ s', t+1 ] 
-					if( ( oldScore == 0 ) || ( newScore > oldScore ) ) {
-						viterbi[ nextStateNo ][ nextTimeSlice ] = newScore;				// viterbi[ s', t+1 ] <- new-score
-																						// back-pointer[ s', t+1 ] <- s
-						traceback[ nextStateNo ][ nextTimeSlice ] = new BackPointer( stateNo, timeslice );
-					}
-				}
-			}
+		// Including the last step into the tail
+		int[] activeStates = Arrays.copyOf( theActiveStates, timeslice + 1 );
+		long allocatedBytes = RecogniserMetrics.getAllocatedBytes();
+		UtteranceMetrics metrics = new UtteranceMetrics( timeslice, theSamplePeriod, activeStates,
+				allocatedBytes < 0 || theStartAllocatedBytes < 0 ? -1 : allocatedBytes - theStartAllocatedBytes );
+		metrics.addStageTime( Stage.EMISSION, theEmissionNanos );
+		metrics.addStageTime( Stage.SEARCH, theSearchNanos + searched - start );
+		metrics.addStageTime( Stage.BACKTRACE, finished - searched );
+		return new RecognitionResult( recognisedWord, nBest, activeStates, metrics );
+	}
+	
+	/**
+	 * Ranks the words by the best path through each of them into the tail in the last step of the search.
+	 * Pronunciations of a word count as the same word.
+	 * @return The nBest best words, best first
+	 */
+	private List<WordHypothesis> rankWords() {
+		List<WordHypothesis> hypotheses = new ArrayList<WordHypothesis>();
+		List<Integer> wordIds = new ArrayList<Integer>();
+		
+		// The best exit of every word
+		for( int exit = 0; exit < theSearch.getNumberOfExits(); exit++ ) {
+			Word word = theModel.getWordOfState( theSearch.getExitState( exit ) );
+			if( word == null || theSearch.getExitScore( exit ) == Double.NEGATIVE_INFINITY )
+				continue;
+			int bestExit = theBestExits[ word.getId() ];
+			if( bestExit < 0 )
+				wordIds.add( word.getId() );
+			if( bestExit < 0 || theSearch.getExitScore( exit ) > theSearch.getExitScore( bestExit ) )
+				theBestExits[ word.getId() ] = exit;
 		}
-
-		// Set the beginning of the traceback path
-		BackPointer startBP = new BackPointer( numberOfStates-1, observationLength+1 );
-
-		// Trace back the path, only interested in statenumbers -> BackPointer.i
-	    List<State> res = new ArrayList<State>();
-	    int i = startBP.i;
-	    while( ( startBP = traceback[ startBP.i ][ startBP.j ]) != null ) {
-	    	State bpState = stateList.get( i );
-	    	if( !res.contains( bpState ) )
-	    		res.add( bpState );
-	    	i = startBP.i;
-	    }
-
-	    // Reconstruct the recognised transcription out of the path
-	    List<String> transcription = new ArrayList<String>();
-	    for( int index = ( res.size() - 1 ); index >= 1; index-- ) {
-	    	State state = res.get( index );
-	    	// dont add null, sil and duplicates of tri-state phonemes
-	    	if( state.getPhoneme() != null
-	    			&& !( state.getPhoneme().equals( "sil" ) )
-	    			&& ( res.size() > index + 1 )
-	    			&& !( res.get( index + 1 ).getPhoneme().equals( state.getPhoneme() ) ) )
-	    		transcription.add( state.getPhoneme() );
-	    }
-
-	    // Get the word that matches the most probable transcription and write the word to the output
-	    recognisedWord = theLexicon.getWordByTranscription( transcription );
-	    if( recognisedWord != null )
-	    	System.out.println( recognisedWord.getWord() );
-	    else
-	    	System.err.println( "No match!" );
+		for( int wordId : wordIds ) {
+			int exit = theBestExits[ wordId ];
+			hypotheses.add( new WordHypothesis( theModel.getWordOfState( theSearch.getExitState( exit ) ), theSearch.getExitScore( exit ) ) );
+			theBestExits[ wordId ] = -1;
+		}
+		
+		Collections.sort( hypotheses, BEST_FIRST );
+		return new ArrayList<WordHypothesis>( hypotheses.subList( 0, Math.min( nBest, hypotheses.size() ) ) );
+	}
+	
+	/**
+	 * One step of the search from the current timeslice to the next, counting the expanded states
+	 * @param <b>emitting</b> Whether the next timeslice is observed; after the last timeslice only the tail is reached
+	 * @param <b>emissionOffset</b> The index in theEmissions of the emissions of the next timeslice
+	 */
+	private void step( boolean emitting, int emissionOffset ) {
+		int active = theSearch.step( theEmissions, emissionOffset, emitting, timeslice );
+		
+		if( timeslice == theActiveStates.length )
+			theActiveStates = Arrays.copyOf( theActiveStates, 2 * timeslice );
+		theActiveStates[ timeslice ] = active;
+		if( emitting )
+			timeslice++;
 	}
-}
\ No newline at end of file
+}
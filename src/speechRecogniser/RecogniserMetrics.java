@@ -0,0 +1,157 @@
+package speechRecogniser;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import speechRecogniser.entity.Stage;
+import speechRecogniser.entity.UtteranceMetrics;
+
+/**
+ * The RecogniserMetrics add up the UtteranceMetrics of all utterances, and the times of loading the model.
+ * Every Stage has a latency histogram, the totals give the overall real-time factor, active states per frame
+ * and allocated bytes per utterance. All of it can be registered as MBeans with the platform MBean server,
+ * to watch a running recogniser with jconsole or any other JMX client.
+ * Recording is thread-safe and lock-free, so the workers of a BatchRecogniser share one RecogniserMetrics.
+ */
+public class RecogniserMetrics implements RecogniserMetricsMBean {
+	// The domain of the ObjectNames of the MBeans
+	private static final String DOMAIN = "speechRecogniser";
+	// The ThreadMXBean measuring allocated bytes, null when the JVM cannot
+	private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = allocationBean();
+	
+	private final StageMetrics[] theStages = new StageMetrics[ Stage.values().length ];
+	private final AtomicLong theUtterances = new AtomicLong();
+	private final AtomicLong theFrames = new AtomicLong();
+	// Sum of nSamples times sampPeriod, in 100ns units
+	private final AtomicLong theAudioDuration = new AtomicLong();
+	// Processing time of the utterances with a known duration
+	private final AtomicLong theTimedProcessingNanos = new AtomicLong();
+	private final AtomicLong theActiveStates = new AtomicLong();
+	private final AtomicLong theSteps = new AtomicLong();
+	private final AtomicLong theAllocatedBytes = new AtomicLong();
+	// Number of utterances with measured allocated bytes
+	private final AtomicLong theAllocationCount = new AtomicLong();
+	private final AtomicLong theMaximumAllocatedBytes = new AtomicLong();
+	
+	public RecogniserMetrics() {
+		for( Stage stage : Stage.values() )
+			theStages[ stage.ordinal() ] = new StageMetrics();
+	}
+	
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if( bean instanceof com.sun.management.ThreadMXBean ) {
+				com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)bean;
+				if( allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled() )
+					return allocationBean;
+			}
+		} catch( LinkageError e ) {
+			// a runtime without the jdk.management module
+		}
+		return null;
+	}
+	
+	/**
+	 * @return The bytes the current thread allocated since it started, -1 when the JVM does not measure it
+	 */
+	public static long getAllocatedBytes() {
+		return ALLOCATION_BEAN == null ? -1 : ALLOCATION_BEAN.getCurrentThreadAllocatedBytes();
+	}
+	
+	/**
+	 * Counts a single occurrence of a stage, such as loading the model
+	 * @param <b>stage</b> The stage
+	 * @param <b>nanos</b> The time it took in nanoseconds
+	 */
+	public void record( Stage stage, long nanos ) {
+		theStages[ stage.ordinal() ].record( nanos );
+	}
+	
+	/**
+	 * Counts an utterance and the measured stages of it
+	 */
+	public void record( UtteranceMetrics metrics ) {
+		for( Stage stage : Stage.values() ) {
+			if( metrics.isMeasured( stage ) )
+				theStages[ stage.ordinal() ].record( metrics.getStageNanos( stage ) );
+		}
+		theUtterances.incrementAndGet();
+		theFrames.addAndGet( metrics.getNumberOfFrames() );
+		long audioDuration = Math.round( metrics.getAudioSeconds() * 1e7 );
+		if( audioDuration > 0 ) {
+			theAudioDuration.addAndGet( audioDuration );
+			theTimedProcessingNanos.addAndGet( metrics.getProcessingNanos() );
+		}
+		theActiveStates.addAndGet( metrics.getTotalActiveStates() );
+		theSteps.addAndGet( metrics.getNumberOfSteps() );
+		
+		long allocatedBytes = metrics.getAllocatedBytes();
+		if( allocatedBytes >= 0 ) {
+			theAllocatedBytes.addAndGet( allocatedBytes );
+			theAllocationCount.incrementAndGet();
+			long maximum;
+			while( allocatedBytes > ( maximum = theMaximumAllocatedBytes.get() ) && !theMaximumAllocatedBytes.compareAndSet( maximum, allocatedBytes ) );
+		}
+	}
+	
+	public StageMetrics getStage( Stage stage ) {
+		return theStages[ stage.ordinal() ];
+	}
+	
+	/**
+	 * Registers the MBean of the totals and of every stage with the platform MBean server,
+	 * replacing the MBeans of another RecogniserMetrics
+	 * @throws JMException When the MBeans cannot be registered
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		register( server, new ObjectName( DOMAIN, "type", "Recogniser" ), this );
+		for( Stage stage : Stage.values() ) {
+			ObjectName name = new ObjectName( DOMAIN + ":type=Stage,name=" + stage.getName() );
+			register( server, name, theStages[ stage.ordinal() ] );
+		}
+	}
+	
+	private static void register( MBeanServer server, ObjectName name, Object bean ) throws JMException {
+		if( server.isRegistered( name ) )
+			server.unregisterMBean( name );
+		server.registerMBean( bean, name );
+	}
+	
+	public long getUtterances() {
+		return theUtterances.get();
+	}
+	
+	public long getFrames() {
+		return theFrames.get();
+	}
+	
+	public double getAudioSeconds() {
+		return theAudioDuration.get() * 1e-7;
+	}
+	
+	public double getRealTimeFactor() {
+		double audioSeconds = getAudioSeconds();
+		return audioSeconds > 0 ? theTimedProcessingNanos.get() * 1e-9 / audioSeconds : Double.NaN;
+	}
+	
+	public double getActiveStatesPerFrame() {
+		long steps = theSteps.get();
+		return steps > 0 ? (double)theActiveStates.get() / steps : 0;
+	}
+	
+	public double getAllocatedBytesPerUtterance() {
+		long count = theAllocationCount.get();
+		return count > 0 ? (double)theAllocatedBytes.get() / count : Double.NaN;
+	}
+	
+	public long getMaxAllocatedBytesPerUtterance() {
+		return theMaximumAllocatedBytes.get();
+	}
+}
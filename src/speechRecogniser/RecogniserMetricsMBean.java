@@ -0,0 +1,23 @@
+package speechRecogniser;
+
+/**
+ * The JMX view on the totals over all utterances, registered as speechRecogniser:type=Recogniser
+ */
+public interface RecogniserMetricsMBean {
+	long getUtterances();
+	
+	long getFrames();
+	
+	double getAudioSeconds();
+	
+	/**
+	 * @return The processing time of all utterances divided by the duration of their audio
+	 */
+	double getRealTimeFactor();
+	
+	double getActiveStatesPerFrame();
+	
+	double getAllocatedBytesPerUtterance();
+	
+	long getMaxAllocatedBytesPerUtterance();
+}
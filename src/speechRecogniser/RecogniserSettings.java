@@ -0,0 +1,77 @@
+package speechRecogniser;
+
+/**
+ * The RecogniserSettings configure the search of a Recogniser.
+ * By default nothing is pruned, so the search is the exact Viterbi search.
+ */
+public class RecogniserSettings {
+	/**
+	 * The search engines of the Recogniser; both find the same path, they differ in speed.
+	 * VITERBI updates a column of scores for all states each timeslice, TOKEN_PASSING only touches the active states,
+	 * which pays off when pruning keeps few states active in a large graph.
+	 */
+	public enum Engine { VITERBI, TOKEN_PASSING }
+	
+	// The search engine
+	private Engine engine = Engine.VITERBI;
+	// States scoring more than beam below the best state of a timeslice are not expanded (log-probability)
+	private double beam = Double.POSITIVE_INFINITY;
+	// At most this many states are expanded per timeslice (histogram pruning)
+	private int maxActiveStates = Integer.MAX_VALUE;
+	// Whether a mixture is approximated by its best scoring Gaussian
+	private boolean bestComponentOnly = false;
+	// Number of words in the N-best list of a result
+	private int nBest = 1;
+	
+	public double getBeam() {
+		return this.beam;
+	}
+	public void setBeam( double value ) {
+		if( !( value > 0 ) )
+			throw new IllegalArgumentException( "Beam must be positive: " + value );
+		this.beam = value;
+	}
+	
+	public int getMaxActiveStates() {
+		return this.maxActiveStates;
+	}
+	public void setMaxActiveStates( int value ) {
+		if( value < 1 )
+			throw new IllegalArgumentException( "Maximum number of active states must be at least 1: " + value );
+		this.maxActiveStates = value;
+	}
+	
+	public boolean isBestComponentOnly() {
+		return this.bestComponentOnly;
+	}
+	public void setBestComponentOnly( boolean value ) {
+		this.bestComponentOnly = value;
+	}
+	
+	public int getNBest() {
+		return this.nBest;
+	}
+	public void setNBest( int value ) {
+		if( value < 1 )
+			throw new IllegalArgumentException( "N-best list must hold at least 1 word: " + value );
+		this.nBest = value;
+	}
+	
+	public Engine getEngine() {
+		return this.engine;
+	}
+	public void setEngine( Engine value ) {
+		if( value == null )
+			throw new IllegalArgumentException( "No engine" );
+		this.engine = value;
+	}
+	
+	public boolean isPruning() {
+		return beam != Double.POSITIVE_INFINITY || maxActiveStates != Integer.MAX_VALUE;
+	}
+	
+	public String toString() {
+		return engine.name().toLowerCase() + ", beam " + beam + ", max active states " + maxActiveStates
+				+ ( bestComponentOnly ? ", best component only" : "" );
+	}
+}
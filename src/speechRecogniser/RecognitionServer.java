@@ -0,0 +1,380 @@
+package speechRecogniser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import speechRecogniser.entity.RecognitionResult;
+import speechRecogniser.entity.Stage;
+
+/**
+ * The RecognitionServer keeps a CompiledModel resident and recognises requests over HTTP, so a recognition
+ * costs neither a JVM start nor parsing the model. It answers:
+ *
+ *   POST /recognise               the body is a HTK feature file
+ *   GET or POST /recognise?path=p the feature file p on the server is read
+ *   GET /health                   "ok"
+ *   GET /model                    the version of the model and the report of the last reload
+ *   POST /reload                  loads the model again in the background, 202 Accepted
+ *
+ * with a JSON object of the recognised word (null when nothing matched), its log-probability, the time the request
+ * waited for a decoder, the version of the model it was recognised with and the UtteranceMetrics of the decode.
+ * Errors are answered with a JSON object with an error.
+ *
+ * The model is taken from a ModelRegistry: a request leases the current model when it gets a decoder, and keeps it
+ * until it is answered, so a reload never changes the model under a decode. Idle Recognisers are kept for reuse;
+ * one built for an older model is replaced when it is taken, and dropped when that model is released.
+ *
+ * Requests are handled on virtual threads when the Java runtime has them, on a fixed pool of platform threads otherwise.
+ * At most numberOfDecoders requests decode at the same time, each with a Recogniser of the pool, and at most queueSize
+ * more wait for one. Beyond that a request is refused at once with 503 Service Unavailable, before its body is read,
+ * so overload costs neither memory nor latency for the requests already accepted. Bodies larger than MAXIMUM_PAYLOAD
+ * are refused with 413.
+ */
+public class RecognitionServer {
+	// Largest feature file accepted in a request body, 16MB is well over an hour of 39 features every 10ms
+	private static final int MAXIMUM_PAYLOAD = 16 * 1024 * 1024;
+	// Seconds a client should wait before retrying a refused request
+	private static final String RETRY_AFTER = "1";
+
+	private final ModelRegistry theRegistry;
+	// Loads the model again on a reload request
+	private final Callable<CompiledModel> theReloader;
+	private final RecogniserSettings theSettings;
+	private final RecogniserMetrics theMetrics;
+	// A permit for every decoder not decoding at the moment
+	private final Semaphore theDecoders;
+	// The Recognisers not decoding at the moment, at most one per free decoder
+	private final ConcurrentLinkedQueue<Recogniser> theRecognisers = new ConcurrentLinkedQueue<Recogniser>();
+	// A permit for every request decoding or waiting for a Recogniser
+	private final Semaphore theAdmissions;
+	// Runs the requests after admission
+	private final ExecutorService theWorkers;
+	private final boolean virtualThreads;
+	private HttpServer theServer;
+
+	/**
+	 * @param <b>aRegistry</b> The registry holding the model requests are recognised with
+	 * @param <b>reloader</b> Loads the model again when a reload is requested, on the loader thread of the registry
+	 * @param <b>settings</b> The settings of the Recognisers
+	 * @param <b>numberOfDecoders</b> The number of requests decoding at the same time
+	 * @param <b>queueSize</b> The number of requests that may wait for a decoder
+	 * @param <b>metrics</b> The metrics to record every request in
+	 */
+	public RecognitionServer( ModelRegistry aRegistry, Callable<CompiledModel> reloader, RecogniserSettings settings, int numberOfDecoders, int queueSize, RecogniserMetrics metrics ) {
+		if( numberOfDecoders < 1 || queueSize < 0 )
+			throw new IllegalArgumentException( "Needs at least 1 decoder and a queue of at least 0: " + numberOfDecoders + ", " + queueSize );
+		this.theRegistry = aRegistry;
+		this.theReloader = reloader;
+		this.theSettings = settings;
+		this.theMetrics = metrics;
+		this.theDecoders = new Semaphore( numberOfDecoders );
+		ModelRegistry.Lease lease = aRegistry.acquire();
+		try {
+			for( int index = 0; index < numberOfDecoders; index++ )
+				theRecognisers.add( new Recogniser( lease.getModel(), settings ) );
+		} finally {
+			lease.close();
+		}
+		// Idle Recognisers must not keep a released model in memory
+		aRegistry.addListener( new ModelRegistry.Listener() {
+			public void released( CompiledModel model, int version ) {
+				for( Recogniser recogniser : theRecognisers ) {
+					if( recogniser.getModel() == model )
+						theRecognisers.remove( recogniser );
+				}
+			}
+		} );
+		this.theAdmissions = new Semaphore( numberOfDecoders + queueSize );
+
+		ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+		this.virtualThreads = virtualThreadExecutor != null;
+		// The admissions bound the tasks, so the queue of the pool never holds more than queueSize
+		this.theWorkers = virtualThreads ? virtualThreadExecutor : Executors.newFixedThreadPool( numberOfDecoders );
+	}
+
+	/**
+	 * @return An executor starting a virtual thread per task, null when the Java runtime has no virtual threads
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+			return (ExecutorService)factory.invoke( null );
+		} catch( ReflectiveOperationException e ) {
+			// before Java 21, or with virtual threads as a preview feature that is not enabled
+			return null;
+		}
+	}
+
+	/**
+	 * Starts answering requests
+	 * @param <b>address</b> The address to listen on; use the loopback address to accept local requests only
+	 */
+	public void start( InetSocketAddress address ) throws IOException {
+		theServer = HttpServer.create( address, 0 );
+		theServer.createContext( "/recognise", new HttpHandler() {
+			public void handle( HttpExchange exchange ) throws IOException {
+				admit( exchange );
+			}
+		} );
+		theServer.createContext( "/health", new HttpHandler() {
+			public void handle( HttpExchange exchange ) throws IOException {
+				respond( exchange, 200, "ok" );
+			}
+		} );
+		theServer.createContext( "/model", new HttpHandler() {
+			public void handle( HttpExchange exchange ) throws IOException {
+				respond( exchange, 200, modelStatus() );
+			}
+		} );
+		theServer.createContext( "/reload", new HttpHandler() {
+			public void handle( HttpExchange exchange ) throws IOException {
+				if( !exchange.getRequestMethod().equals( "POST" ) ) {
+					respond( exchange, 405, error( "POST to reload the model" ) );
+					return;
+				}
+				theRegistry.reload( theReloader );
+				respond( exchange, 202, modelStatus() );
+			}
+		} );
+		// Handlers run on the dispatcher thread, which only admits or refuses a request
+		theServer.setExecutor( null );
+		theServer.start();
+	}
+
+	/**
+	 * @return The port the server listens on
+	 */
+	public int getPort() {
+		return theServer.getAddress().getPort();
+	}
+
+	/**
+	 * @return Whether requests are handled on virtual threads
+	 */
+	public boolean isUsingVirtualThreads() {
+		return this.virtualThreads;
+	}
+
+	/**
+	 * Stops accepting requests, and waits for the requests being handled
+	 * @param <b>timeout</b> The seconds to wait at most
+	 */
+	public void stop( int timeout ) throws InterruptedException {
+		theServer.stop( 0 );
+		theWorkers.shutdown();
+		theWorkers.awaitTermination( timeout, TimeUnit.SECONDS );
+	}
+
+	/**
+	 * Hands a request to a worker, or refuses it when all decoders and the queue are taken
+	 */
+	private void admit( final HttpExchange exchange ) throws IOException {
+		if( !theAdmissions.tryAcquire() ) {
+			exchange.getResponseHeaders().set( "Retry-After", RETRY_AFTER );
+			respond( exchange, 503, error( "Overloaded, retry later" ) );
+			return;
+		}
+		final long admitted = System.nanoTime();
+		try {
+			theWorkers.execute( new Runnable() {
+				public void run() {
+					try {
+						recognise( exchange, admitted );
+					} catch( IOException e ) {
+						// the client went away
+					} finally {
+						exchange.close();
+						theAdmissions.release();
+					}
+				}
+			} );
+		} catch( RuntimeException e ) {
+			// stopping
+			theAdmissions.release();
+			respond( exchange, 503, error( "Stopping" ) );
+		}
+	}
+
+	/**
+	 * Reads the feature file of a request, waits for a Recogniser, decodes, and answers with the result
+	 * @param <b>admitted</b> The nanoTime the request was admitted
+	 */
+	private void recognise( HttpExchange exchange, long admitted ) throws IOException {
+		String method = exchange.getRequestMethod();
+		String path = queryParameter( exchange, "path" );
+		if( !method.equals( "POST" ) && !( method.equals( "GET" ) && path != null ) ) {
+			respond( exchange, 405, error( "POST a HTK feature file, or GET with a path" ) );
+			return;
+		}
+
+		SignalProcessor theSignalProcessor;
+		long start = System.nanoTime();
+		try {
+			if( path != null ) {
+				theSignalProcessor = new SignalProcessor( Paths.get( path ) );
+			} else {
+				byte[] body = readBody( exchange );
+				if( body == null ) {
+					respond( exchange, 413, error( "Feature files of at most " + MAXIMUM_PAYLOAD + " bytes are accepted" ) );
+					return;
+				}
+				theSignalProcessor = new SignalProcessor( ByteBuffer.wrap( body ), "request body" );
+			}
+		} catch( NoSuchFileException e ) {
+			respond( exchange, 404, error( "File '" + e.getFile() + "' not found" ) );
+			return;
+		} catch( IOException e ) {
+			respond( exchange, 400, error( e.getMessage() ) );
+			return;
+		}
+		long parsed = System.nanoTime();
+
+		try {
+			theDecoders.acquire();
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			respond( exchange, 503, error( "Stopping" ) );
+			return;
+		}
+		long waited = System.nanoTime() - parsed;
+		RecognitionResult theResult;
+		int version;
+		ModelRegistry.Lease lease = theRegistry.acquire();
+		try {
+			version = lease.getVersion();
+			Recogniser theRecogniser = theRecognisers.poll();
+			// built for an older model, or dropped when that model was released
+			if( theRecogniser == null || theRecogniser.getModel() != lease.getModel() )
+				theRecogniser = new Recogniser( lease.getModel(), theSettings );
+			try {
+				theResult = theRecogniser.decode( theSignalProcessor.getObservation() );
+			} catch( IllegalArgumentException e ) {
+				// feature vectors of another size than the model
+				respond( exchange, 400, error( e.getMessage() ) );
+				return;
+			} catch( RuntimeException e ) {
+				// the Recogniser starts over with the next decode, so it is still given back
+				respond( exchange, 500, error( "Recognition failed: " + e ) );
+				return;
+			} finally {
+				theRecognisers.add( theRecogniser );
+			}
+		} finally {
+			lease.close();
+			theDecoders.release();
+		}
+		theResult.getMetrics().addStageTime( Stage.PARSE, parsed - start );
+		theMetrics.record( theResult.getMetrics() );
+
+		StringBuilder response = new StringBuilder( "{\"word\":" );
+		response.append( theResult.isMatch() ? quote( theResult.getWord().getWord() ) : "null" );
+		response.append( ",\"score\":" ).append( theResult.isMatch() ? Double.toString( theResult.getScore() ) : "null" );
+		response.append( ",\"queueMicros\":" ).append( ( start - admitted + waited ) / 1000 );
+		response.append( ",\"modelVersion\":" ).append( version );
+		response.append( ",\"metrics\":" ).append( theResult.getMetrics().toSummaryLine( path != null ? path : "request body" ) );
+		respond( exchange, 200, response.append( '}' ).toString() );
+	}
+
+	/**
+	 * @return The version of the model and the report of the reloads as a JSON object
+	 */
+	private String modelStatus() {
+		StringBuilder status = new StringBuilder( "{\"version\":" ).append( theRegistry.getVersion() );
+		status.append( ",\"residentModels\":" ).append( theRegistry.getResidentModels() );
+		status.append( ",\"reloads\":" ).append( theRegistry.getReloads() );
+		status.append( ",\"failedReloads\":" ).append( theRegistry.getFailedReloads() );
+		status.append( ",\"lastReloadMillis\":" ).append( String.format( Locale.ROOT, "%.1f", theRegistry.getLastReloadMillis() ) );
+		status.append( ",\"heapUsedBeforeReload\":" ).append( theRegistry.getHeapUsedBeforeReload() );
+		status.append( ",\"heapPeakDuringReload\":" ).append( theRegistry.getHeapPeakDuringReload() );
+		status.append( ",\"lastError\":" ).append( theRegistry.getLastError() == null ? "null" : quote( theRegistry.getLastError() ) );
+		return status.append( '}' ).toString();
+	}
+
+	/**
+	 * @return The body of the request, null when it is larger than MAXIMUM_PAYLOAD
+	 */
+	private static byte[] readBody( HttpExchange exchange ) throws IOException {
+		String length = exchange.getRequestHeaders().getFirst( "Content-Length" );
+		try {
+			if( length != null && Long.parseLong( length ) > MAXIMUM_PAYLOAD )
+				return null;
+		} catch( NumberFormatException e ) {
+			// counted while reading
+		}
+
+		InputStream input = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[ 64 * 1024 ];
+		int read;
+		while( ( read = input.read( buffer ) ) >= 0 ) {
+			body.write( buffer, 0, read );
+			if( body.size() > MAXIMUM_PAYLOAD )
+				return null;
+		}
+		return body.toByteArray();
+	}
+
+	/**
+	 * @return The decoded value of a parameter of the query of the request, null when it is absent
+	 */
+	private static String queryParameter( HttpExchange exchange, String name ) {
+		String query = exchange.getRequestURI().getRawQuery();
+		if( query == null )
+			return null;
+		for( String parameter : query.split( "&" ) ) {
+			int equals = parameter.indexOf( '=' );
+			if( equals > 0 && parameter.substring( 0, equals ).equals( name ) )
+				return URLDecoder.decode( parameter.substring( equals + 1 ), StandardCharsets.UTF_8 );
+		}
+		return null;
+	}
+
+	private static String error( String message ) {
+		return "{\"error\":" + quote( message ) + "}";
+	}
+
+	/**
+	 * @return The text as a JSON string
+	 */
+	private static String quote( String text ) {
+		StringBuilder quoted = new StringBuilder( "\"" );
+		for( char character : text.toCharArray() ) {
+			if( character == '"' || character == '\\' )
+				quoted.append( '\\' ).append( character );
+			else if( character < ' ' )
+				quoted.append( String.format( Locale.ROOT, "\\u%04x", (int)character ) );
+			else
+				quoted.append( character );
+		}
+		return quoted.append( '"' ).toString();
+	}
+
+	private static void respond( HttpExchange exchange, int status, String body ) throws IOException {
+		byte[] bytes = ( body + "\n" ).getBytes( StandardCharsets.UTF_8 );
+		exchange.getResponseHeaders().set( "Content-Type", body.startsWith( "{" ) ? "application/json" : "text/plain" );
+		exchange.sendResponseHeaders( status, bytes.length );
+		OutputStream output = exchange.getResponseBody();
+		output.write( bytes );
+		output.close();
+	}
+}
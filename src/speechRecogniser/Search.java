@@ -0,0 +1,189 @@
+package speechRecogniser;
+
+import java.util.Arrays;
+
+import speechRecogniser.hmm.DecodingGraph;
+
+/**
+ * A Search is the engine of a Recogniser: it finds the most probable path through the DecodingGraph,
+ * one timeslice at a time. The Recogniser scores the emissions and selects the engine from its RecogniserSettings.
+ * 
+ * Both engines prune with the beam and maximum number of active states of the settings, and keep the traceback
+ * as word boundary records: every path carries the index of the last record on it, and a record is added when
+ * the best path leaves a word for the tail of the automaton. So the traceback needs memory for the frames,
+ * not for states x frames.
+ * In the last step of an utterance every path entering the tail is also kept as an exit, the states before the tail
+ * identify the words, so the exits give the best score of every word for an N-best list without decoding again.
+ */
+abstract class Search {
+	// Number of bins in the histogram of scores for histogram pruning
+	private static final int NUMBER_OF_BINS = 256;
+	
+	protected final DecodingGraph theGraph;
+	// Statenumber of the nonemitting tail, where all words end
+	protected final int tailStateNo;
+	// Beam and maximum number of active states of the search
+	private final double beam;
+	private final int maxActiveStates;
+	// Scratch for the histogram of scores when pruning
+	private final int[] theHistogram = new int[ NUMBER_OF_BINS ];
+	// Word boundary records: the last state before the boundary, its timeslice and the previous record on the path
+	protected int[] theRecordStates = new int[ 16 ];
+	protected int[] theRecordTimeslices = new int[ 16 ];
+	protected int[] theRecordPrevious = new int[ 16 ];
+	protected int numberOfRecords;
+	// Exits into the tail in the last step: the state before the tail and the score of the path
+	private int[] theExitStates = new int[ 16 ];
+	private double[] theExitScores = new double[ 16 ];
+	private int numberOfExits;
+	
+	protected Search( DecodingGraph graph, RecogniserSettings settings ) {
+		this.theGraph = graph;
+		this.tailStateNo = graph.getNumberOfStates() - 1;
+		this.beam = settings.getBeam();
+		this.maxActiveStates = settings.getMaxActiveStates();
+	}
+	
+	/**
+	 * Starts the search of a new utterance in the head of the automaton
+	 */
+	abstract void start();
+	
+	/**
+	 * Moves the search from the current timeslice to the next.
+	 * @param <b>emissions</b> The emission log-probabilities of the next timeslice, by emission index from emissionOffset
+	 * @param <b>emissionOffset</b> The index in emissions of the state with emission index 0
+	 * @param <b>emitting</b> Whether the next timeslice is observed; after the last timeslice only the tail is reached
+	 * @param <b>timeslice</b> The number of the current timeslice, for the word boundary records
+	 * @return The number of states expanded
+	 */
+	abstract int step( double[] emissions, int emissionOffset, boolean emitting, int timeslice );
+	
+	/**
+	 * @return The statenumber of the state that would enter the tail on the most probable path
+	 *  if the utterance ended now, or -1 when the tail cannot be reached
+	 */
+	abstract int getPartialWordState();
+	
+	/**
+	 * @return The statenumber of the last state before the tail on the most probable path
+	 *  after the last step of the utterance, or -1 when the tail was not reached
+	 */
+	abstract int getFinalWordState();
+	
+	/**
+	 * @return The number of paths that entered the tail in the last step of the utterance
+	 */
+	int getNumberOfExits() {
+		return this.numberOfExits;
+	}
+	
+	/**
+	 * @return The statenumber of the state before the tail of an exit
+	 * @param <b>exit</b> The number of the exit, from 0 to getNumberOfExits()
+	 */
+	int getExitState( int exit ) {
+		return this.theExitStates[ exit ];
+	}
+	
+	/**
+	 * @return The log-probability of the path of an exit
+	 * @param <b>exit</b> The number of the exit, from 0 to getNumberOfExits()
+	 */
+	double getExitScore( int exit ) {
+		return this.theExitScores[ exit ];
+	}
+	
+	/**
+	 * Removes the exits, at the start of every step
+	 */
+	protected void clearExits() {
+		numberOfExits = 0;
+	}
+	
+	/**
+	 * Adds an exit into the tail in the last step of the utterance
+	 * @param <b>stateNo</b> The state before the tail
+	 * @param <b>score</b> The log-probability of the path entering the tail
+	 */
+	protected void addExit( int stateNo, double score ) {
+		if( numberOfExits == theExitStates.length ) {
+			theExitStates = Arrays.copyOf( theExitStates, 2 * numberOfExits );
+			theExitScores = Arrays.copyOf( theExitScores, 2 * numberOfExits );
+		}
+		theExitStates[ numberOfExits ] = stateNo;
+		theExitScores[ numberOfExits ] = score;
+		numberOfExits++;
+	}
+	
+	/**
+	 * @return Whether the scores of a timeslice with this many candidates need to be pruned
+	 */
+	protected boolean isPruning( int numberOfCandidates ) {
+		return beam != Double.POSITIVE_INFINITY || maxActiveStates < numberOfCandidates;
+	}
+	
+	/**
+	 * Calculates the lowest score of a state that is expanded in a timeslice.
+	 * The beam gives a threshold relative to the best score. When more states than maxActiveStates are within the beam,
+	 * the threshold is raised to the lower edge of the histogram bin holding the maxActiveStates-th best score.
+	 * @param <b>scores</b> The scores of all candidates in the timeslice
+	 * @param <b>numberOfScores</b> The number of scores
+	 * @return The threshold, candidates scoring below it are pruned
+	 */
+	protected double pruningThreshold( double[] scores, int numberOfScores ) {
+		double best = Double.NEGATIVE_INFINITY;
+		for( int index = 0; index < numberOfScores; index++ )
+			best = Math.max( best, scores[ index ] );
+		if( best == Double.NEGATIVE_INFINITY )
+			return best;
+		
+		double threshold = best - beam;
+		int withinBeam = 0;
+		double worst = best;
+		for( int index = 0; index < numberOfScores; index++ ) {
+			if( scores[ index ] >= threshold && scores[ index ] != Double.NEGATIVE_INFINITY ) {
+				withinBeam++;
+				worst = Math.min( worst, scores[ index ] );
+			}
+		}
+		if( withinBeam <= maxActiveStates || worst == best )
+			return threshold;
+		
+		// Histogram pruning, the bins divide [ worst, best ] and are counted from the best score downward
+		double binWidth = ( best - worst ) / NUMBER_OF_BINS;
+		Arrays.fill( theHistogram, 0 );
+		for( int index = 0; index < numberOfScores; index++ ) {
+			if( scores[ index ] >= worst ) {	// never true for -Infinity, worst is finite
+				int bin = (int)( ( best - scores[ index ] ) / binWidth );
+				theHistogram[ Math.min( bin, NUMBER_OF_BINS - 1 ) ]++;
+			}
+		}
+		int kept = 0;
+		for( int bin = 0; bin < NUMBER_OF_BINS; bin++ ) {
+			kept += theHistogram[ bin ];
+			if( kept >= maxActiveStates )
+				return Math.max( threshold, best - ( bin + 1 ) * binWidth );
+		}
+		return threshold;
+	}
+	
+	/**
+	 * Adds a word boundary record
+	 * @param <b>stateNo</b> The last state of the word before the boundary
+	 * @param <b>timeslice</b> The timeslice of the boundary
+	 * @param <b>previous</b> The record of the previous boundary on the path, or -1
+	 * @return The index of the new record
+	 */
+	protected int addRecord( int stateNo, int timeslice, int previous ) {
+		if( numberOfRecords == theRecordStates.length ) {
+			theRecordStates = Arrays.copyOf( theRecordStates, 2 * numberOfRecords );
+			theRecordTimeslices = Arrays.copyOf( theRecordTimeslices, 2 * numberOfRecords );
+			theRecordPrevious = Arrays.copyOf( theRecordPrevious, 2 * numberOfRecords );
+		}
+		theRecordStates[ numberOfRecords ] = stateNo;
+		theRecordTimeslices[ numberOfRecords ] = timeslice;
+		theRecordPrevious[ numberOfRecords ] = previous;
+		return numberOfRecords++;
+	}
+}
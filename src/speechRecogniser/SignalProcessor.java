@@ -1,165 +1,150 @@
 package speechRecogniser;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.EOFException;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
-import speechRecogniser.entity.FeatureVector;
 import speechRecogniser.entity.Observation;
-import speechRecogniser.hmm.*;
 
 /**
- * The SignalProcessor reads the observation,
- * and calculates the emission log-probabilities for the states in the phonemes.
+ * The SignalProcessor reads the observation from a HTK feature file.
+ * The emission log-probabilities of the emitting states are calculated by the EmissionScorer of the CompiledModel.
  * @author Zeeger Lubsen
  */
 public class SignalProcessor {
-	private String theFeatureVectorFile;	// The input file
+	// Size of the HTK header: nSamples, sampPeriod, sampSize and parmKind
+	private static final int HEADER_SIZE = 12;
+	// Files of at least this size are memory-mapped, smaller files are read in a single call
+	private static final long MAP_THRESHOLD = 64 * 1024;
+	// HTK parmKind: the lower 6 bits are the basic kind, the higher bits are qualifiers
+	private static final int BASEMASK = 077;
+	private static final int WAVEFORM = 0;
+	private static final int DISCRETE = 10;
+	private static final int HASCOMPX = 02000;		// _C, compressed
+	private static final int HASCRCC = 010000;		// _K, has CRC checksum
+	
+	private Path theFeatureVectorFile;		// The input file, null for a buffer
+	private String theName;					// The name of the input in error messages
 	private Observation theObservation;		// The Observation
 	private int nSamples;					// the number of samples in the file
+	private int sampPeriod;					// The sample period in 100ns units
 	private int sampSize;					// The size of each sample in bytes
+	private int parmKind;					// The HTK parameter kind of the samples
 
 	/**
 	 * Parses a HTK format file and contructs an Observation
 	 * @param aFeatureVectorFile A file in HTK format
+	 * @throws IOException When the file cannot be read or is not a supported HTK feature file
 	 */
-	public SignalProcessor( String aFeatureVectorFile ) {
+	public SignalProcessor( Path aFeatureVectorFile ) throws IOException {
 		this.theFeatureVectorFile = aFeatureVectorFile;
+		this.theName = aFeatureVectorFile.toString();
 		this.parseHTKfile();
 	}
 	
 	/**
-	 * Parses a HTK format file and constructs an Observation,
-	 * then calculates the emission log-probabilities for the given phonemes
-	 * @param <b>aFeatureVectorFile</b> A HTK format file with an observation
-	 * @param <b>phonemes</b> A collection of phonemes of a trained recogniser
+	 * Parses the contents of a HTK format file, such as one received over a network, and contructs an Observation
+	 * @param <b>aFeatureVectorBuffer</b> The contents of a file in HTK format, from its position to its limit
+	 * @param <b>aName</b> The name of the input in error messages
+	 * @throws IOException When the contents are not a supported HTK feature file
 	 */
-	public SignalProcessor( String aFeatureVectorFile, PhonemeCollection phonemes ) {
-		this( aFeatureVectorFile );
-		this.calculateEmissionProbabilities( phonemes );
+	public SignalProcessor( ByteBuffer aFeatureVectorBuffer, String aName ) throws IOException {
+		this.theName = aName;
+		this.parseHTKbuffer( aFeatureVectorBuffer.slice() );
 	}
 	
 	/**
-	 * Parses a HTK format file and creates an Observation object from the data in the file
-	 * Assumes the "file" to be located in mfc/"file".mfc 
+	 * Parses a HTK format file and creates an Observation object from the data in the file.
+	 * The samples must be uncompressed 4-byte floats; a CRC checksum is allowed but not verified.
 	 */
-	private void parseHTKfile() {
-		DataInputStream inputStream = null;
+	private void parseHTKfile() throws IOException {
+		FileChannel channel = FileChannel.open( theFeatureVectorFile, StandardOpenOption.READ );
 		
 		try {
-			inputStream = new DataInputStream(
-							new BufferedInputStream(
-								new FileInputStream( "mfc/" + this.theFeatureVectorFile + ".mfc" ) ) );
-			
-			// Read 12byte header
-			nSamples = inputStream.readInt();			// 4-bytes
-			/*sampPeriod = */inputStream.readInt();		// 4-bytes
-			sampSize = inputStream.readShort();			// 2-bytes
-			/*parmKind = */inputStream.readShort();		// 2-bytes
-													//	= 12-bytes
-
-			// Each vector contains 39 4-byte floats ( sampSize / sizeof( float ) )
-			int nVectorSize = ( sampSize / 4 );
+			long fileSize = channel.size();
+			ByteBuffer buffer;
 			
-			// Read the number of specified feature-vectors ( nSamples ) 
-			List<FeatureVector> featureVectors = new ArrayList<FeatureVector>();
-			for( int i = 0; i < nSamples; i++ ) {
-				FeatureVector featureVector = new FeatureVector();
-				for( int j = 0; j < nVectorSize ; j++ ) {
-					float readFloat = inputStream.readFloat();
-					// Read float, stored as double, presents no problems
-					featureVector.add( readFloat );
+			// Map larger files, so the floats are decoded straight from the page cache
+			if( fileSize >= MAP_THRESHOLD ) {
+				buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, fileSize );
+			} else {
+				buffer = ByteBuffer.allocate( (int)fileSize );
+				while( buffer.hasRemaining() ) {
+					if( channel.read( buffer ) < 0 )
+						throw new EOFException( "EOF while reading " + theName );
 				}
-				featureVectors.add( featureVector );
+				buffer.flip();
 			}
-			// Set the resulting Observation
-			this.theObservation = new Observation( featureVectors );
-			
-		} catch ( EOFException e ) {
-			System.err.println( "EOFException while reading " + this.theFeatureVectorFile );
-		} catch ( FileNotFoundException e ) {
-			System.err.println( "File '" + this.theFeatureVectorFile + ".mfc' not found!" );
-			System.err.println( "Cannot parse audio input file. Exiting." );
-			System.exit( 0 );
-		} catch ( IOException e ) {
-			System.err.println( "IOException while reading " + this.theFeatureVectorFile );
+			parseHTKbuffer( buffer );
+		} finally {
+			channel.close();
 		}
 	}
 	
 	/**
-	 * Calculate the emission log-probabilities for Phonemes
-	 * @param <b>phonemes</b>
+	 * Parses the contents of a HTK format file and creates an Observation object from it
+	 * @param <b>buffer</b> The contents, from position 0 to the limit of the buffer
 	 */
-	private void calculateEmissionProbabilities( PhonemeCollection phonemes ) {
-		// for each phoneme in the collection
-		for( HMM phoneme : phonemes.getPhonemes() ) {
-			// Consider each 2nd, 3rd and 4th state of a phoneme; 1st and 2nd are non-emitting
-			State state = phoneme.getFirstState().getNextState();
-			int vectorIndex, featureIndex;
+	private void parseHTKbuffer( ByteBuffer buffer ) throws IOException {
+		long fileSize = buffer.remaining();
+		// HTK files are big-endian, which is the default order of a new ByteBuffer
+		buffer.order( ByteOrder.BIG_ENDIAN );
+		
+		if( buffer.remaining() < HEADER_SIZE )
+			throw new EOFException( theName + " is too short for a HTK header" );
 			
-			while( state != phoneme.getLastState() ) {
-				// Get the mean and variance of the state
-				List<Double> mean = state.getMean().getFeatures();
-				List<Double> variance = state.getVariance().getFeatures();
-				vectorIndex = 0;
-				
-				// calculate the emission log-probabiltity for every timeslice
-				for( FeatureVector slice : theObservation.getFeatureVectors() ) {
-					double gconst, probability;
-					double totala = 0, totalb = Double.NEGATIVE_INFINITY;
-					featureIndex = 0;
-					
-					// for every element in a featurevector calculate the probability density
-					for( double feature : slice.getFeatures() ) {
-						double a, b;
-						
-						// Calculate the 'e^'-part of the distribution function
-						a = Math.pow( feature - mean.get( featureIndex ), 2 ) / ( 2 * variance.get( featureIndex ) );
-						totala -= a;
-						
-						// Calculate the 'gconst'-part of the distribution function
-						b = 2 * Math.PI * variance.get( featureIndex );
-						if( totalb == Double.NEGATIVE_INFINITY )
-							totalb = b;
-						else
-							totalb *= b;
-						
-						featureIndex++;
-					}
-					// Add the totals for the log-probability; <validate GCONST value>
-					gconst = Math.log( totalb );
-					totalb = 0.5 * gconst;
-					// quick: probability = totala + 0.5 * state.getGCONSTValue();
-					
-					probability = totala - totalb;
-					
-					// Set emission[state][slice] = probability
-					state.addEmission( probability );
-					
-					vectorIndex++;
-				}
-				state = state.getNextState();
-			}
-		}
+		// Read 12byte header
+		nSamples = buffer.getInt();					// 4-bytes
+		sampPeriod = buffer.getInt();				// 4-bytes
+		sampSize = buffer.getShort();				// 2-bytes
+		parmKind = buffer.getShort() & 0xffff;		// 2-bytes
+													//	= 12-bytes
+		checkHeader( fileSize );
+		
+		// Each vector contains 4-byte floats ( sampSize / sizeof( float ) )
+		int nVectorSize = ( sampSize / 4 );
+		
+		// Decode the number of specified feature-vectors ( nSamples ) into one array
+		float[] features = new float[ nSamples * nVectorSize ];
+		buffer.asFloatBuffer().get( features );
+		
+		// Set the resulting Observation
+		this.theObservation = new Observation( features, nSamples, nVectorSize, sampPeriod );
+	}
+	
+	/**
+	 * Checks that the header describes feature vectors this SignalProcessor can read
+	 * @param <b>fileSize</b> The size of the file in bytes
+	 */
+	private void checkHeader( long fileSize ) throws IOException {
+		int baseKind = parmKind & BASEMASK;
+		
+		if( ( parmKind & HASCOMPX ) != 0 )
+			throw new IOException( theName + ": compressed HTK files are not supported" );
+		if( baseKind == WAVEFORM || baseKind == DISCRETE )
+			throw new IOException( theName + ": parameter kind " + parmKind + " does not contain feature vectors" );
+		if( nSamples < 0 || sampSize <= 0 || sampSize % 4 != 0 )
+			throw new IOException( theName + ": invalid header, nSamples " + nSamples + ", sampSize " + sampSize );
+		
+		long dataSize = (long)nSamples * sampSize;
+		// With HASCRCC the checksum follows the samples, it is not read
+		if( HEADER_SIZE + dataSize + ( ( parmKind & HASCRCC ) != 0 ? 2 : 0 ) > fileSize )
+			throw new EOFException( theName + ": " + nSamples + " samples do not fit in " + fileSize + " bytes" );
 	}
 	
 	public Observation getObservation() {
 		return this.theObservation;
 	}
 	
-	// For debugging
-	/*private void printEmissions( HMM phoneme ) {
-		System.out.println( phoneme.getName() );
-		State state = phoneme.getFirstState().getNextState();
-		int i = 0;
-		for( double d : state.getEmissions() ) {
-			System.out.println( i + " : " + d + " : " + Math.log( d ) + " : " + Math.exp( d ) );
-			i++;
-		}		
-	}*/
+	public int getSamplePeriod() {
+		return this.sampPeriod;
+	}
+	
+	public int getParameterKind() {
+		return this.parmKind;
+	}
 }
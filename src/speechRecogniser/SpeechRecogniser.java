@@ -1,110 +1,583 @@
 package speechRecogniser;
 
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.management.JMException;
+
+import speechRecogniser.entity.RecognitionResult;
+import speechRecogniser.entity.Stage;
+import speechRecogniser.entity.Word;
+import speechRecogniser.entity.WordHypothesis;
+
 public class SpeechRecogniser {
 	private final static int HMM_INPUT_FILE_INDEX = 0;
 	private final static int LEXICON_INPUT_FILE_INDEX = 1;
 	private final static int AUDIO_INPUT_FILE_INDEX = 2;
 	private final static int TEST_KEYWORD_INDEX = 2;
 	private final static int TESTSET_FILE_INDEX = 3;
-	private final static int DEBUG_FLAG_NORMAL_INDEX = 3;
-	private final static int DEBUG_FLAG_TESTSET_INDEX = 4;
+	private final static int PORT_INDEX = 3;
+	private final static int OPTIONS_NORMAL_INDEX = 3;
+	private final static int OPTIONS_TESTSET_INDEX = 4;
 	
+	private static String _model_filename;
 	private static String _hmm_input_filename;
 	private static String _lexicon_filename;
 	private static String _audio_filename;
 	private static String _testset_filename;
 	private static boolean _doDebugOutput = false;
+	private static int _numberOfWorkers = Runtime.getRuntime().availableProcessors();
+	// Number of requests the server lets wait for a decoder, -1 for 4 per worker
+	private static int _queueSize = -1;
+	// Number of feature files read ahead of the decoders in a testset, -1 for 2 per worker
+	private static int _prefetchDepth = -1;
+	private static RecogniserSettings _settings = new RecogniserSettings();
+	private static boolean _usePrefixTree = false;
+	private static RecogniserMetrics _metrics = new RecogniserMetrics();
+	// File to write a summary line of metrics per utterance to, - for the error output, null for none
+	private static String _metrics_filename;
+	private static PrintStream _metricsOutput;
 	
 	/**
 	 * @author Zeeger Lubsen
 	 * @param args
 	 */
 	public static void main( String[] args ) {
-		// SpeechRecogniser <HMM_input_file> <lexicon_input_file> runtest <testset_file> [debug]?
+		// SpeechRecogniser compile <HMM_input_file> <lexicon_input_file> <model_file> [-tree]?
+		if( args.length >= 4 && args[ 0 ].equals( "compile" ) ) {
+			_hmm_input_filename = args[ 1 ];
+			_lexicon_filename = args[ 2 ];
+			
+			parseOptions( args, 4 );
+			
+			compileModel( args[ 3 ] );
+			return;
+		}
+		// SpeechRecogniser generate <directory> [-words <n>]? [-utterances <n>]? [-frames <n>]? ...
+		if( args.length >= 2 && args[ 0 ].equals( "generate" ) ) {
+			generateTestSetup( args );
+			return;
+		}
+		// SpeechRecogniser <model_file> ...: a compiled model file takes the place of the HMM and lexicon input files
+		if( args.length >= 2 && ModelFile.isModelFile( Paths.get( args[ 0 ] ) ) ) {
+			_model_filename = args[ 0 ];
+			String[] shiftedArgs = new String[ args.length + 1 ];
+			shiftedArgs[ HMM_INPUT_FILE_INDEX ] = args[ 0 ];
+			shiftedArgs[ LEXICON_INPUT_FILE_INDEX ] = args[ 0 ];
+			System.arraycopy( args, 1, shiftedArgs, 2, args.length - 1 );
+			args = shiftedArgs;
+		}
+		// SpeechRecogniser <HMM_input_file> <lexicon_input_file> runtest <testset_file> [debug]? [-threads <n>]? [-prefetch <n>]?
 		if( args.length >= 4 && args[ TEST_KEYWORD_INDEX ].equals( "runtest" ) ) {
 			_hmm_input_filename = args[ HMM_INPUT_FILE_INDEX ];
 			_lexicon_filename = args[ LEXICON_INPUT_FILE_INDEX ];
 			_testset_filename = args[ TESTSET_FILE_INDEX ];
 			
-			if( args.length == 5 && args[ DEBUG_FLAG_TESTSET_INDEX ].equals( "debug" ) )
-				_doDebugOutput = true;
+			parseOptions( args, OPTIONS_TESTSET_INDEX );
 			
 			runTestSet();
+		// SpeechRecogniser <HMM_input_file> <lexicon_input_file> serve <port> [debug]? [-threads <n>]? [-queue <n>]?
+		} else if( args.length >= 4 && args[ TEST_KEYWORD_INDEX ].equals( "serve" ) ) {
+			_hmm_input_filename = args[ HMM_INPUT_FILE_INDEX ];
+			_lexicon_filename = args[ LEXICON_INPUT_FILE_INDEX ];
+			int port = -1;
+			try {
+				port = Integer.parseInt( args[ PORT_INDEX ] );
+			} catch( NumberFormatException e ) {
+				exitWithUsage();
+			}
+			
+			parseOptions( args, OPTIONS_TESTSET_INDEX );
+			
+			runServer( port );
 		// SpeechRecogniser <HMM_input_file> <lexicon_input_file> <audio_input_file> [debug]?
 		} else if( args.length >= 3 ) {
 			_hmm_input_filename = args[ HMM_INPUT_FILE_INDEX ];
 			_lexicon_filename = args[ LEXICON_INPUT_FILE_INDEX ];
 			_audio_filename = args[ AUDIO_INPUT_FILE_INDEX ];
 			
-			if( args.length == 4 && args[ DEBUG_FLAG_NORMAL_INDEX ].equals( "debug" ) )
-				_doDebugOutput = true;
+			parseOptions( args, OPTIONS_NORMAL_INDEX );
 			
 			runRecogniser();
 		} else {
-			System.err.println( "Incorrect arguments." );
-			System.err.println( "Usage: java SpeechRecogniser <HMM_input_file> <lexicon_input_file> <audio_input_file>" );
+			exitWithUsage();
+		}
+	}
+	
+	/**
+	 * Parses the optional arguments following the input files
+	 * @param <b>args</b> The arguments of main
+	 * @param <b>firstOptionIndex</b> The index of the first optional argument
+	 */
+	private static void parseOptions( String[] args, int firstOptionIndex ) {
+		for( int index = firstOptionIndex; index < args.length; index++ ) {
+			String option = args[ index ];
+			
+			if( option.equals( "debug" ) ) {
+				_doDebugOutput = true;
+				continue;
+			}
+			if( option.equals( "-tree" ) ) {
+				_usePrefixTree = true;
+				continue;
+			}
+			if( option.equals( "-bestcomponent" ) ) {
+				_settings.setBestComponentOnly( true );
+				continue;
+			}
+			if( index + 1 >= args.length )
+				exitWithUsage();
+			String value = args[ ++index ];
+			
+			try {
+				if( option.equals( "-threads" ) ) {
+					_numberOfWorkers = Integer.parseInt( value );
+					if( _numberOfWorkers < 1 )
+						exitWithUsage();
+				} else if( option.equals( "-prefetch" ) ) {
+					_prefetchDepth = Integer.parseInt( value );
+					if( _prefetchDepth < 0 )
+						exitWithUsage();
+				} else if( option.equals( "-queue" ) ) {
+					_queueSize = Integer.parseInt( value );
+					if( _queueSize < 0 )
+						exitWithUsage();
+				} else if( option.equals( "-beam" ) ) {
+					_settings.setBeam( Double.parseDouble( value ) );
+				} else if( option.equals( "-maxactive" ) ) {
+					_settings.setMaxActiveStates( Integer.parseInt( value ) );
+				} else if( option.equals( "-nbest" ) ) {
+					_settings.setNBest( Integer.parseInt( value ) );
+				} else if( option.equals( "-metrics" ) ) {
+					_metrics_filename = value;
+				} else if( option.equals( "-engine" ) ) {
+					if( value.equals( "viterbi" ) )
+						_settings.setEngine( RecogniserSettings.Engine.VITERBI );
+					else if( value.equals( "tokens" ) )
+						_settings.setEngine( RecogniserSettings.Engine.TOKEN_PASSING );
+					else
+						exitWithUsage();
+				} else {
+					exitWithUsage();
+				}
+			} catch( IllegalArgumentException e ) {
+				// also catches NumberFormatException
+				exitWithUsage();
+			}
+		}
+	}
+	
+	private static void exitWithUsage() {
+		System.err.println( "Incorrect arguments." );
+		System.err.println( "Usage: java SpeechRecogniser <HMM_input_file> <lexicon_input_file> <audio_input_file> [debug] [options]" );
+		System.err.println( "   or: java SpeechRecogniser <HMM_input_file> <lexicon_input_file> runtest <testset_file> [debug] [-threads <n>] [-prefetch <n>] [options]" );
+		System.err.println( "   or: java SpeechRecogniser <HMM_input_file> <lexicon_input_file> serve <port> [debug] [-threads <n>] [-queue <n>] [options]" );
+		System.err.println( "   or: java SpeechRecogniser compile <HMM_input_file> <lexicon_input_file> <model_file> [-tree]" );
+		System.err.println( "   or: java SpeechRecogniser generate <directory> [-words <n>] [-utterances <n>] [-frames <n>]" );
+		System.err.println( "                                  [-phonemes <n>] [-states <n>] [-mixtures <n>] [-seed <n>]" );
+		System.err.println( "A <model_file> written by compile can replace <HMM_input_file> <lexicon_input_file>." );
+		System.err.println( "Options: -beam <log-probability>  prune states further than the beam below the best state" );
+		System.err.println( "         -maxactive <n>           expand at most n states per timeslice" );
+		System.err.println( "         -tree                    share the states of common first phonemes of words" );
+		System.err.println( "         -bestcomponent           score a mixture by its best Gaussian only, faster but approximate" );
+		System.err.println( "         -nbest <n>               write the n best words with their log-probability" );
+		System.err.println( "         -engine viterbi|tokens   search with viterbi columns (default) or by token passing" );
+		System.err.println( "         -metrics <file>|-        write the timings of every utterance as a line of JSON" );
+		System.exit( 1 );
+	}
+	
+	/**
+	 * Loads the trained phonemes and the lexicon, and compiles them into the model for the Recogniser.
+	 * This is done once, the model is reused for every observation.
+	 * A compiled model file is read instead when one was given.
+	 */
+	private static CompiledModel loadModel() {
+		long start = System.nanoTime();
+		if( _model_filename != null ) {
+			try {
+				CompiledModel theModel = ModelFile.read( Paths.get( _model_filename ) );
+				_metrics.record( Stage.MODEL_LOAD, System.nanoTime() - start );
+				return theModel;
+			} catch( IOException e ) {
+				System.err.println( "Cannot read model file: " + e.getMessage() );
+				System.exit( 1 );
+			}
+		}
+		
+		// The phonemeCollection contains the recognisers trained HMM data
+		PhonemeCollection thePhonemeCollection = new PhonemeCollection( _hmm_input_filename );
+		// The lexicon contains all word that can be recognised, including a HMM for each word with transition and emission probabilities
+		Lexicon theLexicon = new Lexicon( _lexicon_filename, thePhonemeCollection );
+		long loaded = System.nanoTime();
+		_metrics.record( Stage.MODEL_LOAD, loaded - start );
+		
+		CompiledModel theModel = new CompiledModel( thePhonemeCollection, theLexicon, _usePrefixTree );
+		_metrics.record( Stage.AUTOMATON, System.nanoTime() - loaded );
+		return theModel;
+	}
+	
+	/**
+	 * Loads the model from the same files as loadModel(), for a reload in a running process
+	 * @throws IOException When a file cannot be read; the running model is kept then
+	 */
+	private static CompiledModel reloadModel() throws IOException {
+		if( _model_filename != null )
+			return ModelFile.read( Paths.get( _model_filename ) );
+		PhonemeCollection thePhonemeCollection = PhonemeCollection.read( _hmm_input_filename );
+		Lexicon theLexicon = Lexicon.read( _lexicon_filename, thePhonemeCollection );
+		return new CompiledModel( thePhonemeCollection, theLexicon, _usePrefixTree );
+	}
+	
+	/**
+	 * Registers the MBeans of the metrics, and opens the output for the summary lines when one was given
+	 */
+	private static void startMetrics() {
+		try {
+			_metrics.register();
+		} catch( JMException e ) {
+			if( _doDebugOutput )
+				System.err.println( "Cannot register the metrics MBeans: " + e.getMessage() );
+		}
+		if( _metrics_filename == null )
+			return;
+		if( _metrics_filename.equals( "-" ) ) {
+			_metricsOutput = System.err;
+		} else {
+			try {
+				_metricsOutput = new PrintStream( new FileOutputStream( _metrics_filename ), true, "UTF-8" );
+			} catch( IOException e ) {
+				System.err.println( "Cannot write metrics file: " + e.getMessage() );
+				System.exit( 1 );
+			}
+		}
+	}
+	
+	/**
+	 * Writes the summary line of the metrics of a result, when asked for
+	 * @param <b>input_file</b> The name of the utterance
+	 */
+	private static void writeMetrics( String input_file, RecognitionResult theResult ) {
+		if( _metricsOutput != null && theResult.getMetrics() != null )
+			_metricsOutput.println( theResult.getMetrics().toSummaryLine( input_file ) );
+	}
+	
+	/**
+	 * Closes the metrics output, and writes the latencies of all stages to the debug output
+	 */
+	private static void finishMetrics() {
+		if( _metricsOutput != null && _metricsOutput != System.err )
+			_metricsOutput.close();
+		if( !_doDebugOutput )
+			return;
+		
+		for( Stage stage : Stage.values() ) {
+			StageMetrics theStage = _metrics.getStage( stage );
+			if( theStage.getCount() > 0 )
+				System.err.println( String.format( Locale.ROOT, "\t%-10s %6d times, %10.1f ms in total, median %10.1f us, 99%% %10.1f us, max %10.1f us",
+						stage.getName(), theStage.getCount(), theStage.getTotalMillis(), theStage.getMedianMicros(),
+						theStage.get99thPercentileMicros(), theStage.getMaxMicros() ) );
+		}
+		if( _metrics.getUtterances() > 0 )
+			System.err.println( String.format( Locale.ROOT, "\tReal-time factor %.5f over %.2f s of audio, %.0f bytes allocated per utterance.",
+					_metrics.getRealTimeFactor(), _metrics.getAudioSeconds(), _metrics.getAllocatedBytesPerUtterance() ) );
+	}
+	
+	/**
+	 * Compiles the HMMs and lexicon, and writes the model to a model file for a fast start of the recogniser
+	 */
+	private static void compileModel( String model_file ) {
+		CompiledModel theModel = loadModel();
+		try {
+			ModelFile.write( theModel, Paths.get( model_file ) );
+		} catch( IOException e ) {
+			System.err.println( "Cannot write model file: " + e.getMessage() );
 			System.exit( 1 );
 		}
+		if( _doDebugOutput )
+			System.err.println( "Compiled " + theModel.getLexicon().getWords().size() + " words into " + theModel.getNumberOfStates()
+					+ " states with " + theModel.getNumberOfEmittingStates() + " distinct emitting states, model file version " + ModelFile.VERSION + "." );
 	}
 	
+	/**
+	 * Writes a synthetic model, lexicon and testset for scaling tests, with the sizes given by the options
+	 * @param <b>args</b> The arguments of main: generate, the directory, and the options
+	 */
+	private static void generateTestSetup( String[] args ) {
+		int numberOfWords = 1000;
+		int numberOfUtterances = 30;
+		int numberOfFrames = 200;
+		int numberOfPhonemes = 40;
+		int numberOfStates = 3;
+		int numberOfComponents = 1;
+		long seed = 1;
+		
+		for( int index = 2; index < args.length; index += 2 ) {
+			if( index + 1 >= args.length )
+				exitWithUsage();
+			String option = args[ index ];
+			try {
+				int value = Integer.parseInt( args[ index + 1 ] );
+				if( option.equals( "-words" ) )
+					numberOfWords = value;
+				else if( option.equals( "-utterances" ) )
+					numberOfUtterances = value;
+				else if( option.equals( "-frames" ) )
+					numberOfFrames = value;
+				else if( option.equals( "-phonemes" ) )
+					numberOfPhonemes = value;
+				else if( option.equals( "-states" ) )
+					numberOfStates = value;
+				else if( option.equals( "-mixtures" ) )
+					numberOfComponents = value;
+				else if( option.equals( "-seed" ) )
+					seed = value;
+				else
+					exitWithUsage();
+			} catch( NumberFormatException e ) {
+				exitWithUsage();
+			}
+		}
+		
+		try {
+			SyntheticData data = new SyntheticData( numberOfPhonemes, numberOfStates, numberOfComponents, 39, seed );
+			data.writeTestSetup( Paths.get( args[ 1 ] ), numberOfWords, numberOfUtterances, numberOfFrames );
+		} catch( IllegalArgumentException e ) {
+			System.err.println( "Cannot generate: " + e.getMessage() );
+			System.exit( 1 );
+		} catch( IOException e ) {
+			System.err.println( "Cannot write the test setup: " + e.getMessage() );
+			System.exit( 1 );
+		}
+		System.err.println( "Wrote " + numberOfWords + " words of " + numberOfPhonemes + " phonemes and " + numberOfUtterances
+				+ " utterances of " + numberOfFrames + " frames to " + args[ 1 ] + "; run hmms.mmf lexicon runtest testset there." );
+	}
+	
+	/**
+	 * @return The HTK feature file for an input name; Assumes the "file" to be located in mfc/"file".mfc
+	 */
+	private static Path featureFile( String input_file ) {
+		return Paths.get( "mfc", input_file + ".mfc" );
+	}
+	
+	/**
+	 * Recognises a single input file
+	 * @return The result of the recognition
+	 */
+	private static RecognitionResult recognise( Recogniser theRecogniser, String input_file ) throws IOException {
+		// The signalProcessor parses the feature file that must be recognised
+		long start = System.nanoTime();
+		SignalProcessor theSignalProcessor = new SignalProcessor( featureFile( input_file ) );
+		long parsed = System.nanoTime();
+		// The recogniser tries to reconstruct the word being said in the observation
+		RecognitionResult theResult = theRecogniser.decode( theSignalProcessor.getObservation() );
+		theResult.getMetrics().addStageTime( Stage.PARSE, parsed - start );
+		_metrics.record( theResult.getMetrics() );
+		return theResult;
+	}
+	
+	/**
+	 * Writes the recognised word to the output.
+	 * With an N-best list, writes a line with each word and its log-probability, best first, followed by an empty line
+	 */
+	private static void writeResult( RecognitionResult theResult ) {
+		if( !theResult.isMatch() )
+			System.err.println( "No match!" );
+		else if( _settings.getNBest() == 1 )
+			System.out.println( theResult.getWord().getWord() );
+		else {
+			for( WordHypothesis hypothesis : theResult.getNBest() )
+				System.out.println( hypothesis.getWord().getWord() + "\t" + hypothesis.getScore() );
+			System.out.println();
+		}
+	}
+	
+	/**
+	 * Recognises all files in the testset on _numberOfWorkers threads sharing one model.
+	 * The results are written, and verified, in the order of the testset by this thread only,
+	 * so the counts need no synchronisation.
+	 * The feature files, and the label files for the verification, are read _prefetchDepth files ahead of the decoders.
+	 */
 	private static void runTestSet() {
-		Lexicon theLexicon;
-		PhonemeCollection thePhonemeCollection;
-		SignalProcessor theSignalProcessor;
-		Recogniser theRecogniser;
-		OutputVerifier theOutputVerifier;
 		TestSet theTestSet;
 		
 		// The testset contains a list of input files to run
 		theTestSet = new TestSet( _testset_filename );
 		
+		startMetrics();
+		CompiledModel theModel = loadModel();
+		if( _doDebugOutput )
+			System.err.println( "Scoring emissions with the " + theModel.getEmissionScorer().getKernelName() + " kernel." );
+		int prefetchDepth = _prefetchDepth >= 0 ? _prefetchDepth : 2 * _numberOfWorkers;
+		BatchRecogniser theBatchRecogniser = new BatchRecogniser( theModel, _settings, _numberOfWorkers, prefetchDepth, _metrics );
+		
+		// Queue all files, the futures are kept in the order of the testset
+		List<Future<RecognitionResult>> theResults = new ArrayList<Future<RecognitionResult>>();
+		List<Future<OutputVerifier>> theOutputVerifiers = new ArrayList<Future<OutputVerifier>>();
+		for( final String testset_input_file : theTestSet.getTestSet() ) {
+			theResults.add( theBatchRecogniser.submit( featureFile( testset_input_file ) ) );
+			if( _doDebugOutput ) {
+				// The outputVerifier knows what word is actually being said in the audio file
+				theOutputVerifiers.add( theBatchRecogniser.prefetch( new Callable<OutputVerifier>() {
+					public OutputVerifier call() throws IOException {
+						return OutputVerifier.read( testset_input_file );
+					}
+				} ) );
+			}
+		}
+		
 		int countTrue = 0;
 		int countFalse = 0;
+		long totalActiveStates = 0;
+		long totalTimeslices = 0;
 		
-		for( String testset_input_file : theTestSet.getTestSet() ) {
-			// The phonemeCollection contains the recognisers trained HMM data
-			thePhonemeCollection = new PhonemeCollection( _hmm_input_filename );
-			// The signalProcessor parses the feature file that must be recognised, and adds the emission-probabilities to the phonemes
-			theSignalProcessor = new SignalProcessor( testset_input_file, thePhonemeCollection );
-			// The lexicon contains all word that can be recognised, including a HMM for each word with transition and emission probabilities
-			theLexicon = new Lexicon( _lexicon_filename, thePhonemeCollection );
-			// The recogniser tries to reconstruct the word being said in the observation, and produces the output
-			theRecogniser = new Recogniser( theLexicon, theSignalProcessor.getObservation() );
+		for( int index = 0; index < theResults.size(); index++ ) {
+			String testset_input_file = theTestSet.getTestSet().get( index );
+			RecognitionResult theResult = null;
 			
-			if( _doDebugOutput ) {
-				// The outputVerifier knows what word is actually being said in the audio file
-				theOutputVerifier = new OutputVerifier( testset_input_file );
+			try {
+				theResult = theResults.get( index ).get();
+				writeResult( theResult );
+				writeMetrics( testset_input_file, theResult );
 				
-				if( theOutputVerifier.matchWord( theRecogniser.recognisedWord ) )
+				for( int active : theResult.getActiveStates() )
+					totalActiveStates += active;
+				totalTimeslices += theResult.getActiveStates().length;
+			} catch( ExecutionException e ) {
+				System.err.println( "Error while recognising " + testset_input_file + ": " + e.getCause() );
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			
+			if( _doDebugOutput ) {
+				if( verify( theOutputVerifiers.get( index ), testset_input_file, theResult == null ? null : theResult.getWord() ) )
 					countTrue++;
 				else
 					countFalse++;
 			}
 		}
+		theBatchRecogniser.shutdown();
 		
 		if( _doDebugOutput ) {
 			System.err.println( "Summary of " + (countTrue + countFalse) + " words:" );
 			System.err.println( "\t" + countTrue + " word correctly recognised." );
 			System.err.println( "\t" + countFalse + " word incorrectly recognised." );
+			if( totalTimeslices > 0 )
+				System.err.println( "\t" + ( totalActiveStates / totalTimeslices ) + " of " + theModel.getNumberOfStates()
+						+ " states active per timeslice on average (" + _settings + ")." );
+		}
+		finishMetrics();
+	}
+	
+	/**
+	 * Writes the word spoken in an input file to the debug output, and checks whether it was recognised
+	 * @param <b>theOutputVerifier</b> The verifier of the input file, being read
+	 * @param <b>recognisedWord</b> The word recognised in the input file, null when none was
+	 * @return Whether the recognised word is the spoken word; false when the label-file cannot be read
+	 */
+	private static boolean verify( Future<OutputVerifier> theOutputVerifier, String input_file, Word recognisedWord ) {
+		OutputVerifier theVerifier;
+		try {
+			theVerifier = theOutputVerifier.get();
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch( ExecutionException e ) {
+			if( e.getCause() instanceof FileNotFoundException ) {
+				System.err.println( "File 'label/" + input_file + ".lab' not found!" );
+				System.err.println( "Cannot parse audio verification file.\nSpeechRecogniser output verification is not available." );
+			} else {
+				System.err.println( "IOException while reading file 'label/" + input_file + ".lab'" );
+			}
+			return false;
+		}
+		if( theVerifier.getSpokenWord() == null ) {
+			System.err.println( "Error parsing audio verification word...\nSpeechRecogniser output verification is not available." );
+			return false;
 		}
+		System.err.println( "Verification of spoken word: " + theVerifier.getSpokenWord() );
+		return theVerifier.matchWord( recognisedWord );
+	}
+	
+	/**
+	 * Serves recognition requests on the loopback address until the process is stopped.
+	 * _numberOfWorkers requests decode at the same time, _queueSize more may wait.
+	 * The model files are read again on a reload request, and the new model is swapped in by a ModelRegistry.
+	 */
+	private static void runServer( int port ) {
+		startMetrics();
+		final ModelRegistry theRegistry = new ModelRegistry( loadModel(), _metrics );
+		try {
+			theRegistry.register();
+		} catch( JMException e ) {
+			if( _doDebugOutput )
+				System.err.println( "Cannot register the model registry MBean: " + e.getMessage() );
+		}
+		Callable<CompiledModel> theReloader = new Callable<CompiledModel>() {
+			public CompiledModel call() throws IOException {
+				return reloadModel();
+			}
+		};
+		int queueSize = _queueSize >= 0 ? _queueSize : 4 * _numberOfWorkers;
+		final RecognitionServer theServer = new RecognitionServer( theRegistry, theReloader, _settings, _numberOfWorkers, queueSize, _metrics );
+		
+		try {
+			theServer.start( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ) );
+		} catch( IOException e ) {
+			System.err.println( "Cannot start the server: " + e.getMessage() );
+			System.exit( 1 );
+		}
+		Runtime.getRuntime().addShutdownHook( new Thread() {
+			public void run() {
+				try {
+					theServer.stop( 5 );
+				} catch( InterruptedException e ) {
+					// exiting anyway
+				}
+				theRegistry.shutdown();
+				finishMetrics();
+			}
+		} );
+		System.err.println( "Listening on http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + theServer.getPort()
+				+ "/recognise with " + _numberOfWorkers + " decoders and a queue of " + queueSize + ", on "
+				+ ( theServer.isUsingVirtualThreads() ? "virtual threads." : "platform threads." ) );
 	}
 	
 	private static void runRecogniser() {
-		Lexicon theLexicon;
-		PhonemeCollection thePhonemeCollection;
-		SignalProcessor theSignalProcessor;
-		Recogniser theRecogniser;
 		OutputVerifier theOutputVerifier;
 		
-		// The phonemeCollection contains the recognisers trained HMM data
-		thePhonemeCollection = new PhonemeCollection( _hmm_input_filename );
-		// The signalProcessor parses the feature file that must be recognised, and adds the emission-probabilities to the phonemes
-		theSignalProcessor = new SignalProcessor( _audio_filename, thePhonemeCollection );
-		// The lexicon contains all word that can be recognised, including a HMM for each word with transition and emission probabilities
-		theLexicon = new Lexicon( _lexicon_filename, thePhonemeCollection );
+		startMetrics();
+		CompiledModel theModel = loadModel();
 		// The recogniser tries to reconstruct the word being said in the observation, and produces the output
 		try {
-			theRecogniser = new Recogniser( theLexicon, theSignalProcessor.getObservation() );
+			if( _doDebugOutput )
+				System.err.println( "Scoring emissions with the " + theModel.getEmissionScorer().getKernelName() + " kernel." );
+			RecognitionResult theResult = recognise( new Recogniser( theModel, _settings ), _audio_filename );
+			writeResult( theResult );
+			writeMetrics( _audio_filename, theResult );
+			if( _doDebugOutput )
+				System.err.println( Math.round( theResult.getAverageActiveStates() ) + " of " + theModel.getNumberOfStates()
+						+ " states active per timeslice on average (" + _settings + ")." );
+		} catch( NoSuchFileException e ) {
+			System.err.println( "File '" + e.getFile() + "' not found!" );
+			System.err.println( "Cannot parse audio input file. Exiting." );
+			System.exit( 1 );
+		} catch( IOException e ) {
+			System.err.println( "Cannot parse audio input file: " + e.getMessage() );
+			System.exit( 1 );
 		} catch( OutOfMemoryError outofmem ) {
 			System.err.println( "Out of memory" );
 		}
@@ -113,5 +586,6 @@ public class SpeechRecogniser {
 			// The outputVerifier knows what word is actually being said in the audio file
 			theOutputVerifier = new OutputVerifier( _audio_filename );
 		}
+		finishMetrics();
 	}
 }
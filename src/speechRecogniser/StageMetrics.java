@@ -0,0 +1,108 @@
+package speechRecogniser;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The StageMetrics keep a latency histogram of a Stage. The buckets are logarithmic with 8 linear sub-buckets
+ * for every power of two nanoseconds, so a percentile is accurate to 12.5% from 1ns up to centuries,
+ * in a fixed array of counters. Recording is lock-free, so all decoding threads record into the same histogram.
+ */
+public class StageMetrics implements StageMetricsMBean {
+	// log2 of the number of sub-buckets per power of two
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NUMBER_OF_BUCKETS = ( 64 - SUB_BUCKET_BITS ) * SUB_BUCKETS;
+	
+	private final AtomicLongArray theBuckets = new AtomicLongArray( NUMBER_OF_BUCKETS );
+	private final AtomicLong theCount = new AtomicLong();
+	private final AtomicLong theTotalNanos = new AtomicLong();
+	private final AtomicLong theMaximumNanos = new AtomicLong();
+	
+	/**
+	 * @return The bucket counting a latency
+	 */
+	private static int bucketOf( long nanos ) {
+		if( nanos < SUB_BUCKETS )
+			return (int)nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros( nanos );
+		int subBucket = (int)( nanos >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+		return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+	}
+	
+	/**
+	 * @return The largest latency counted by a bucket
+	 */
+	private static long highestNanosOf( int bucket ) {
+		if( bucket < SUB_BUCKETS )
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long)( SUB_BUCKETS + bucket % SUB_BUCKETS ) << shift;
+		return lowest + ( 1L << shift ) - 1;
+	}
+	
+	/**
+	 * Counts a latency
+	 * @param <b>nanos</b> The latency in nanoseconds, negative values count as 0
+	 */
+	public void record( long nanos ) {
+		nanos = Math.max( nanos, 0 );
+		theBuckets.incrementAndGet( bucketOf( nanos ) );
+		theCount.incrementAndGet();
+		theTotalNanos.addAndGet( nanos );
+		long maximum;
+		while( nanos > ( maximum = theMaximumNanos.get() ) && !theMaximumNanos.compareAndSet( maximum, nanos ) );
+	}
+	
+	/**
+	 * @return The latency below which the fraction of the counted latencies falls, in nanoseconds; 0 when none are counted
+	 * @param <b>fraction</b> The fraction, between 0 and 1
+	 */
+	public long getPercentileNanos( double fraction ) {
+		long count = theCount.get();
+		if( count == 0 )
+			return 0;
+		long rank = Math.max( 1, (long)Math.ceil( fraction * count ) );
+		long seen = 0;
+		for( int bucket = 0; bucket < NUMBER_OF_BUCKETS; bucket++ ) {
+			seen += theBuckets.get( bucket );
+			if( seen >= rank )
+				return Math.min( highestNanosOf( bucket ), theMaximumNanos.get() );
+		}
+		// recorded concurrently
+		return theMaximumNanos.get();
+	}
+	
+	public long getCount() {
+		return theCount.get();
+	}
+	
+	public long getTotalNanos() {
+		return theTotalNanos.get();
+	}
+	
+	public double getTotalMillis() {
+		return theTotalNanos.get() * 1e-6;
+	}
+	
+	public double getMeanMicros() {
+		long count = theCount.get();
+		return count > 0 ? theTotalNanos.get() * 1e-3 / count : 0;
+	}
+	
+	public double getMedianMicros() {
+		return getPercentileNanos( 0.5 ) * 1e-3;
+	}
+	
+	public double get90thPercentileMicros() {
+		return getPercentileNanos( 0.9 ) * 1e-3;
+	}
+	
+	public double get99thPercentileMicros() {
+		return getPercentileNanos( 0.99 ) * 1e-3;
+	}
+	
+	public double getMaxMicros() {
+		return theMaximumNanos.get() * 1e-3;
+	}
+}
@@ -0,0 +1,20 @@
+package speechRecogniser;
+
+/**
+ * The JMX view on the latencies of a Stage, registered as speechRecogniser:type=Stage,name=<stage>
+ */
+public interface StageMetricsMBean {
+	long getCount();
+	
+	double getTotalMillis();
+	
+	double getMeanMicros();
+	
+	double getMedianMicros();
+	
+	double get90thPercentileMicros();
+	
+	double get99thPercentileMicros();
+	
+	double getMaxMicros();
+}
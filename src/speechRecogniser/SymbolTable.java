@@ -0,0 +1,58 @@
+package speechRecogniser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SymbolTable interns names, such as those of phonemes and words, as dense ids: the n-th distinct name
+ * gets id n. Looking up the id of a name is a hash lookup, and the name of an id an array lookup,
+ * so the rest of the recogniser can work with ints and arrays indexed by id instead of comparing strings.
+ */
+public class SymbolTable {
+	// The id of every interned name
+	private final Map<String,Integer> theIds = new HashMap<String,Integer>();
+	// The interned names, the index in the list is the id
+	private final List<String> theSymbols = new ArrayList<String>();
+	
+	/**
+	 * Gives the id of a name, adding the name when it is not in the table
+	 * @param <b>symbol</b> The name to intern
+	 * @return The id of the name
+	 */
+	public int intern( String symbol ) {
+		Integer id = theIds.get( symbol );
+		if( id == null ) {
+			id = theSymbols.size();
+			theIds.put( symbol, id );
+			theSymbols.add( symbol );
+		}
+		return id;
+	}
+	
+	/**
+	 * @return The id of the name, -1 when it is not in the table
+	 * @param <b>symbol</b> The name to look up
+	 */
+	public int getId( String symbol ) {
+		Integer id = theIds.get( symbol );
+		return id == null ? -1 : id;
+	}
+	
+	public boolean contains( String symbol ) {
+		return theIds.containsKey( symbol );
+	}
+	
+	/**
+	 * @return The name with the id
+	 * @param <b>id</b> The id of the name, from 0 to size()
+	 */
+	public String getSymbol( int id ) {
+		return theSymbols.get( id );
+	}
+	
+	public int size() {
+		return theSymbols.size();
+	}
+}
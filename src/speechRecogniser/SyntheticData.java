@@ -0,0 +1,273 @@
+package speechRecogniser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * SyntheticData writes random but valid input files for the recogniser, for scaling tests without real data:
+ *
+ *   an HMM definition file as the PhonemeCollection parses it: sil and numberOfPhonemes phonemes p1, p2, ...,
+ *     left-to-right with a self-loop on every emitting state, every state a mixture of numberOfComponents Gaussians
+ *   a lexicon as the Lexicon reads it: words w0, w1, ... of 2 to 6 phonemes, every word with another transcription
+ *   HTK feature files as the SignalProcessor reads them: MFCC_D_A_0 vectors of 4-byte floats, 10ms apart,
+ *     of a word of the lexicon between silences, drawn from the Gaussians of its states
+ *   a testset with a feature file in mfc/ and a label file in label/ for each utterance, as runtest reads them
+ *
+ * The frames of an utterance are spread evenly over its states, and drawn with 1.5 times the deviation of the state,
+ * so the recogniser has to work for the right word. The same seed always gives the same files.
+ */
+public class SyntheticData {
+	// Shortest and longest transcription of a word
+	private static final int MINIMUM_WORD_LENGTH = 2;
+	private static final int MAXIMUM_WORD_LENGTH = 6;
+	// 10ms in units of 100ns, the sampPeriod of the feature files
+	private static final int SAMPLE_PERIOD = 100000;
+	// MFCC with energy, deltas and accelerations: MFCC_D_A_0
+	private static final short PARAMETER_KIND = 6 | 0x100 | 0x200 | 0x2000;
+
+	private final int numberOfPhonemes;
+	private final int numberOfStates;
+	private final int numberOfComponents;
+	private final int vectorSize;
+	private final Random theRandom;
+	// Means, variances and weights of the Gaussians, per phoneme per emitting state per component; sil is phoneme 0
+	private final float[][][][] theMeans;
+	private final float[][][][] theVariances;
+	private final float[][][] theWeights;
+	// Transcriptions of the words of the last lexicon written, as phoneme numbers
+	private final List<int[]> theTranscriptions = new ArrayList<int[]>();
+
+	/**
+	 * Draws the Gaussians of all phonemes
+	 * @param <b>numberOfPhonemes</b> The number of phonemes besides sil
+	 * @param <b>numberOfStates</b> The number of emitting states of every phoneme
+	 * @param <b>numberOfComponents</b> The number of Gaussians in the mixture of every state
+	 * @param <b>vectorSize</b> The length of the feature vectors
+	 * @param <b>seed</b> The seed of the random numbers
+	 */
+	public SyntheticData( int numberOfPhonemes, int numberOfStates, int numberOfComponents, int vectorSize, long seed ) {
+		if( numberOfPhonemes < 1 || numberOfStates < 1 || numberOfComponents < 1 || vectorSize < 1 )
+			throw new IllegalArgumentException( "Needs at least 1 phoneme, state, component and feature" );
+		this.numberOfPhonemes = numberOfPhonemes;
+		this.numberOfStates = numberOfStates;
+		this.numberOfComponents = numberOfComponents;
+		this.vectorSize = vectorSize;
+		this.theRandom = new Random( seed );
+		this.theMeans = new float[ numberOfPhonemes + 1 ][ numberOfStates ][ numberOfComponents ][ vectorSize ];
+		this.theVariances = new float[ numberOfPhonemes + 1 ][ numberOfStates ][ numberOfComponents ][ vectorSize ];
+		this.theWeights = new float[ numberOfPhonemes + 1 ][ numberOfStates ][ numberOfComponents ];
+
+		for( int phoneme = 0; phoneme <= numberOfPhonemes; phoneme++ ) {
+			for( int state = 0; state < numberOfStates; state++ ) {
+				float totalWeight = 0;
+				for( int component = 0; component < numberOfComponents; component++ ) {
+					for( int featureIndex = 0; featureIndex < vectorSize; featureIndex++ ) {
+						theMeans[ phoneme ][ state ][ component ][ featureIndex ] = 10 * theRandom.nextFloat() - 5;
+						theVariances[ phoneme ][ state ][ component ][ featureIndex ] = 0.5f + 2.5f * theRandom.nextFloat();
+					}
+					theWeights[ phoneme ][ state ][ component ] = 0.5f + theRandom.nextFloat();
+					totalWeight += theWeights[ phoneme ][ state ][ component ];
+				}
+				for( int component = 0; component < numberOfComponents; component++ )
+					theWeights[ phoneme ][ state ][ component ] /= totalWeight;
+			}
+		}
+	}
+
+	public int getVectorSize() {
+		return this.vectorSize;
+	}
+
+	private static String phonemeName( int phoneme ) {
+		return phoneme == 0 ? "sil" : "p" + phoneme;
+	}
+
+	/**
+	 * Writes the HMMs of sil and the phonemes
+	 * @param <b>file</b> The HMM definition file to write
+	 */
+	public void writeModel( Path file ) throws IOException {
+		PrintWriter output = new PrintWriter( Files.newBufferedWriter( file ) );
+
+		try {
+			output.println( "~o <VECSIZE> " + vectorSize + " <MFCC_D_A_0>" );
+			for( int phoneme = 0; phoneme <= numberOfPhonemes; phoneme++ ) {
+				output.println( "~h \"" + phonemeName( phoneme ) + "\"" );
+				output.println( "<BEGINHMM>" );
+				output.println( "<NUMSTATES> " + ( numberOfStates + 2 ) );
+				for( int state = 0; state < numberOfStates; state++ ) {
+					output.println( "<STATE> " + ( state + 2 ) );
+					if( numberOfComponents > 1 )
+						output.println( "<NUMMIXES> " + numberOfComponents );
+					for( int component = 0; component < numberOfComponents; component++ ) {
+						if( numberOfComponents > 1 )
+							output.println( "<MIXTURE> " + ( component + 1 ) + " " + format( theWeights[ phoneme ][ state ][ component ] ) );
+						output.println( "<MEAN> " + vectorSize );
+						writeVector( output, theMeans[ phoneme ][ state ][ component ] );
+						output.println( "<VARIANCE> " + vectorSize );
+						writeVector( output, theVariances[ phoneme ][ state ][ component ] );
+					}
+				}
+				// Entry into the first emitting state, 0.6 to stay in a state and 0.4 to move to the next, the last one to the exit
+				output.println( "<TRANSP> " + ( numberOfStates + 2 ) );
+				for( int from = 0; from < numberOfStates + 2; from++ ) {
+					StringBuilder row = new StringBuilder();
+					for( int to = 0; to < numberOfStates + 2; to++ ) {
+						double probability = 0;
+						if( from == 0 )
+							probability = to == 1 ? 1 : 0;
+						else if( from <= numberOfStates )
+							probability = to == from ? 0.6 : to == from + 1 ? 0.4 : 0;
+						row.append( ' ' ).append( format( probability ) );
+					}
+					output.println( row );
+				}
+				output.println( "<ENDHMM>" );
+			}
+		} finally {
+			output.close();
+		}
+		if( output.checkError() )
+			throw new IOException( "Cannot write " + file );
+	}
+
+	private static String format( double value ) {
+		return String.format( Locale.ROOT, "%e", value );
+	}
+
+	private static void writeVector( PrintWriter output, float[] vector ) {
+		StringBuilder line = new StringBuilder();
+		for( float value : vector )
+			line.append( ' ' ).append( format( value ) );
+		output.println( line );
+	}
+
+	/**
+	 * Writes a lexicon, and keeps the transcriptions of its words to write utterances of
+	 * @param <b>file</b> The lexicon file to write
+	 * @param <b>numberOfWords</b> The size of the vocabulary
+	 * @throws IllegalArgumentException When the phonemes do not have enough transcriptions for the words
+	 */
+	public void writeLexicon( Path file, int numberOfWords ) throws IOException {
+		long possibleTranscriptions = 0;
+		for( int length = MINIMUM_WORD_LENGTH; length <= MAXIMUM_WORD_LENGTH && possibleTranscriptions < numberOfWords; length++ )
+			possibleTranscriptions += (long)Math.pow( numberOfPhonemes, length );
+		if( numberOfWords < 1 || possibleTranscriptions < numberOfWords )
+			throw new IllegalArgumentException( numberOfPhonemes + " phonemes do not have " + numberOfWords + " different transcriptions" );
+
+		Set<String> transcriptions = new HashSet<String>();
+		theTranscriptions.clear();
+		PrintWriter output = new PrintWriter( Files.newBufferedWriter( file ) );
+
+		try {
+			while( theTranscriptions.size() < numberOfWords ) {
+				int[] transcription = new int[ MINIMUM_WORD_LENGTH + theRandom.nextInt( MAXIMUM_WORD_LENGTH - MINIMUM_WORD_LENGTH + 1 ) ];
+				StringBuilder line = new StringBuilder();
+				for( int index = 0; index < transcription.length; index++ ) {
+					transcription[ index ] = 1 + theRandom.nextInt( numberOfPhonemes );
+					line.append( ' ' ).append( phonemeName( transcription[ index ] ) );
+				}
+				if( !transcriptions.add( line.toString() ) )
+					continue;
+
+				output.println( "w" + theTranscriptions.size() + line );
+				theTranscriptions.add( transcription );
+			}
+		} finally {
+			output.close();
+		}
+		if( output.checkError() )
+			throw new IOException( "Cannot write " + file );
+	}
+
+	/**
+	 * Writes a HTK feature file of a random word of the last lexicon written, between silences
+	 * @param <b>file</b> The feature file to write
+	 * @param <b>numberOfFrames</b> The length of the utterance, at least a frame for every state of the longest word
+	 * @return The word spoken
+	 */
+	public String writeFeatures( Path file, int numberOfFrames ) throws IOException {
+		if( theTranscriptions.isEmpty() )
+			throw new IllegalStateException( "No lexicon written" );
+		if( numberOfFrames < ( MAXIMUM_WORD_LENGTH + 2 ) * numberOfStates )
+			throw new IllegalArgumentException( "Utterances need at least " + ( MAXIMUM_WORD_LENGTH + 2 ) * numberOfStates + " frames" );
+
+		int word = theRandom.nextInt( theTranscriptions.size() );
+		int[] transcription = theTranscriptions.get( word );
+		int[] phonemes = new int[ transcription.length + 2 ];
+		System.arraycopy( transcription, 0, phonemes, 1, transcription.length );
+		int statesInUtterance = phonemes.length * numberOfStates;
+
+		DataOutputStream output = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( file ) ) );
+		try {
+			output.writeInt( numberOfFrames );
+			output.writeInt( SAMPLE_PERIOD );
+			output.writeShort( 4 * vectorSize );
+			output.writeShort( PARAMETER_KIND );
+
+			for( int frame = 0; frame < numberOfFrames; frame++ ) {
+				int state = (int)( (long)frame * statesInUtterance / numberOfFrames );
+				int phoneme = phonemes[ state / numberOfStates ];
+				int component = drawComponent( theWeights[ phoneme ][ state % numberOfStates ] );
+				float[] mean = theMeans[ phoneme ][ state % numberOfStates ][ component ];
+				float[] variance = theVariances[ phoneme ][ state % numberOfStates ][ component ];
+				for( int featureIndex = 0; featureIndex < vectorSize; featureIndex++ )
+					output.writeFloat( (float)( mean[ featureIndex ] + 1.5 * Math.sqrt( variance[ featureIndex ] ) * theRandom.nextGaussian() ) );
+			}
+		} finally {
+			output.close();
+		}
+		return "w" + word;
+	}
+
+	private int drawComponent( float[] weights ) {
+		float draw = theRandom.nextFloat();
+		for( int component = 0; component < weights.length - 1; component++ ) {
+			draw -= weights[ component ];
+			if( draw < 0 )
+				return component;
+		}
+		return weights.length - 1;
+	}
+
+	/**
+	 * Writes a complete test setup into a directory: hmms.mmf, lexicon, testset, and the feature and label files
+	 * of the utterances utt0, utt1, ... in mfc/ and label/; run the recogniser from the directory with
+	 * hmms.mmf lexicon runtest testset
+	 * @param <b>directory</b> The directory to write to, created when it does not exist
+	 * @param <b>numberOfWords</b> The size of the vocabulary
+	 * @param <b>numberOfUtterances</b> The number of utterances in the testset
+	 * @param <b>numberOfFrames</b> The length of every utterance
+	 */
+	public void writeTestSetup( Path directory, int numberOfWords, int numberOfUtterances, int numberOfFrames ) throws IOException {
+		Files.createDirectories( directory.resolve( "mfc" ) );
+		Files.createDirectories( directory.resolve( "label" ) );
+		writeModel( directory.resolve( "hmms.mmf" ) );
+		writeLexicon( directory.resolve( "lexicon" ), numberOfWords );
+
+		PrintWriter testSet = new PrintWriter( Files.newBufferedWriter( directory.resolve( "testset" ) ) );
+		try {
+			for( int utterance = 0; utterance < numberOfUtterances; utterance++ ) {
+				String name = "utt" + utterance;
+				String word = writeFeatures( directory.resolve( "mfc" ).resolve( name + ".mfc" ), numberOfFrames );
+				Files.write( directory.resolve( "label" ).resolve( name + ".lab" ), ( word + "\n" ).getBytes( StandardCharsets.US_ASCII ) );
+				testSet.println( name );
+			}
+		} finally {
+			testSet.close();
+		}
+		if( testSet.checkError() )
+			throw new IOException( "Cannot write " + directory.resolve( "testset" ) );
+	}
+}
@@ -0,0 +1,189 @@
+package speechRecogniser;
+
+import java.util.Arrays;
+
+import speechRecogniser.hmm.DecodingGraph;
+
+/**
+ * The TokenPassingSearch finds the most probable path by passing tokens through the DecodingGraph.
+ * Only active states hold a token, carrying the score of the best path into the state and the word boundary
+ * record on that path, so a step costs time for the active states only instead of for all states.
+ * Tokens are recycled through a pool; once the pool has grown to the largest number of active states,
+ * a step does not allocate.
+ */
+class TokenPassingSearch extends Search {
+	// The best path into a state
+	private static class Token {
+		private int stateNo;
+		private double score;
+		// The last word boundary record on the path, -1 for none
+		private int history;
+	}
+	
+	// Tokens of the current and the next timeslice
+	private Token[] theTokens = new Token[ 64 ];
+	private int numberOfTokens;
+	private Token[] theNextTokens = new Token[ 64 ];
+	private int numberOfNextTokens;
+	// Index in theNextTokens of the token in each state, -1 for none
+	private final int[] theTokenIndices;
+	// The token in the tail after the last step, null when the tail was not reached
+	private Token theTailToken;
+	// Unused tokens
+	private Token[] thePool = new Token[ 64 ];
+	private int poolSize;
+	// Scratch for the scores of the tokens when pruning
+	private double[] theTokenScores = new double[ 64 ];
+	
+	TokenPassingSearch( DecodingGraph graph, RecogniserSettings settings ) {
+		super( graph, settings );
+		this.theTokenIndices = new int[ graph.getNumberOfStates() ];
+		Arrays.fill( theTokenIndices, -1 );
+	}
+	
+	void start() {
+		for( int index = 0; index < numberOfTokens; index++ )
+			release( theTokens[ index ] );
+		numberOfTokens = 0;
+		
+		// A single token in the head, log P(1) => 0
+		Token head = obtain();
+		head.stateNo = 0;
+		head.score = 0;
+		head.history = -1;
+		theTokens[ numberOfTokens++ ] = head;
+		theTailToken = null;
+		numberOfRecords = 0;
+		clearExits();
+	}
+	
+	/**
+	 * Passes the tokens within the beam of the best token, and at most maxActiveStates of them,
+	 * over the transitions of their state. A state keeps only the best token passed to it.
+	 */
+	int step( double[] emissions, int emissionOffset, boolean emitting, int timeslice ) {
+		// The compiled automaton
+		int[] successorOffsets = theGraph.getSuccessorOffsets();
+		int[] successors = theGraph.getSuccessors();
+		double[] probabilities = theGraph.getProbabilities();
+		int[] emissionIndices = theGraph.getEmissionIndices();
+		
+		double threshold = Double.NEGATIVE_INFINITY;
+		if( isPruning( numberOfTokens ) ) {
+			if( theTokenScores.length < numberOfTokens )
+				theTokenScores = new double[ theTokens.length ];
+			for( int index = 0; index < numberOfTokens; index++ )
+				theTokenScores[ index ] = theTokens[ index ].score;
+			threshold = pruningThreshold( theTokenScores, numberOfTokens );
+		}
+		
+		clearExits();
+		int tailPredecessor = -1, tailPredecessorHistory = -1;
+		int active = 0;
+		numberOfNextTokens = 0;
+		
+		for( int index = 0; index < numberOfTokens; index++ ) {
+			Token token = theTokens[ index ];
+			if( token.score < threshold )
+				continue;
+			active++;
+			
+			int last = successorOffsets[ token.stateNo + 1 ];
+			for( int t = successorOffsets[ token.stateNo ]; t < last; t++ ) {
+				int nextStateNo = successors[ t ];
+				int emissionIndex = emissionIndices[ nextStateNo ];
+				
+				double obsLikelihood = ( emitting && emissionIndex >= 0 ) ? emissions[ emissionOffset + emissionIndex ] : 0;
+				double newScore = token.score + probabilities[ t ] + obsLikelihood;
+				if( newScore == Double.NEGATIVE_INFINITY )
+					continue;
+				if( !emitting && nextStateNo == tailStateNo )
+					addExit( token.stateNo, newScore );
+				
+				Token nextToken;
+				int nextIndex = theTokenIndices[ nextStateNo ];
+				if( nextIndex < 0 ) {
+					nextToken = obtain();
+					nextToken.stateNo = nextStateNo;
+					theTokenIndices[ nextStateNo ] = numberOfNextTokens;
+					addNextToken( nextToken );
+				} else {
+					nextToken = theNextTokens[ nextIndex ];
+					if( !( newScore > nextToken.score ) )
+						continue;
+				}
+				nextToken.score = newScore;
+				// the path keeps its word boundaries
+				nextToken.history = token.history;
+				if( nextStateNo == tailStateNo ) {
+					tailPredecessor = token.stateNo;
+					tailPredecessorHistory = token.history;
+				}
+			}
+		}
+		
+		// A path leaving a word into the tail passes a word boundary
+		theTailToken = null;
+		if( tailPredecessor >= 0 ) {
+			theTailToken = theNextTokens[ theTokenIndices[ tailStateNo ] ];
+			theTailToken.history = addRecord( tailPredecessor, timeslice, tailPredecessorHistory );
+		}
+		
+		// Recycle the tokens of the current timeslice, and make the next timeslice current
+		for( int index = 0; index < numberOfTokens; index++ )
+			release( theTokens[ index ] );
+		for( int index = 0; index < numberOfNextTokens; index++ )
+			theTokenIndices[ theNextTokens[ index ].stateNo ] = -1;
+		Token[] tokens = theTokens;
+		theTokens = theNextTokens;
+		theNextTokens = tokens;
+		numberOfTokens = numberOfNextTokens;
+		
+		return active;
+	}
+	
+	int getPartialWordState() {
+		int[] successorOffsets = theGraph.getSuccessorOffsets();
+		int[] successors = theGraph.getSuccessors();
+		double[] probabilities = theGraph.getProbabilities();
+		
+		// The best path into the tail in the next step
+		double bestScore = Double.NEGATIVE_INFINITY;
+		int bestStateNo = -1;
+		for( int index = 0; index < numberOfTokens; index++ ) {
+			Token token = theTokens[ index ];
+			for( int t = successorOffsets[ token.stateNo ]; t < successorOffsets[ token.stateNo + 1 ]; t++ ) {
+				if( successors[ t ] == tailStateNo && token.score + probabilities[ t ] > bestScore ) {
+					bestScore = token.score + probabilities[ t ];
+					bestStateNo = token.stateNo;
+				}
+			}
+		}
+		return bestStateNo;
+	}
+	
+	int getFinalWordState() {
+		// The most probable path ends in the tail, its last record holds the final state of the word
+		if( theTailToken == null || theTailToken.history < 0 )
+			return -1;
+		return theRecordStates[ theTailToken.history ];
+	}
+	
+	private void addNextToken( Token token ) {
+		if( numberOfNextTokens == theNextTokens.length )
+			theNextTokens = Arrays.copyOf( theNextTokens, 2 * numberOfNextTokens );
+		theNextTokens[ numberOfNextTokens++ ] = token;
+	}
+	
+	private Token obtain() {
+		if( poolSize == 0 )
+			return new Token();
+		return thePool[ --poolSize ];
+	}
+	
+	private void release( Token token ) {
+		if( poolSize == thePool.length )
+			thePool = Arrays.copyOf( thePool, 2 * poolSize );
+		thePool[ poolSize++ ] = token;
+	}
+}
@@ -0,0 +1,171 @@
+package speechRecogniser;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorEmissionKernel scores Gaussians with the SIMD lanes of the Java Vector API (jdk.incubator.vector).
+ * The loops are tiled. The features of up to BLOCK_SIZE timeslices are widened to doubles once; then the states
+ * are taken STATE_TILE at a time, and each tile of states is scored for all timeslices of the block, FRAME_TILE timeslices
+ * at a time, so the means and precisions of the tile stay in the cache for every tile of timeslices instead of being
+ * loaded again from memory for each. Within a tile four timeslices are scored at once against every Gaussian,
+ * so its mean and precision are loaded once for the four.
+ * The vectors are padded with zeros to a multiple of the number of lanes, which adds nothing to the sums.
+ * 
+ * The EmissionScorer only loads this class by reflection, when the module is available
+ * (javac and java with --add-modules jdk.incubator.vector); otherwise it scores with its scalar loop.
+ */
+final class VectorEmissionKernel implements EmissionKernel {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	// Number of timeslices widened at once, the block decode() scores
+	private static final int BLOCK_SIZE = 64;
+	// Number of timeslices and of states scored together
+	private static final int FRAME_TILE = 16;
+	private static final int STATE_TILE = 32;
+	
+	private final int numberOfStates;
+	private final int vectorSize;
+	// vectorSize rounded up to a multiple of the number of lanes
+	private final int paddedSize;
+	// The parameters of the EmissionScorer, with the vectors padded to paddedSize
+	private final int[] componentOffsets;
+	private final double[] means;
+	private final double[] scaledPrecisions;
+	private final double[] constants;
+	// The features of a block of timeslices as doubles, padded to paddedSize, per thread
+	private final ThreadLocal<double[]> theFrames = new ThreadLocal<double[]>() {
+		protected double[] initialValue() {
+			return new double[ BLOCK_SIZE * paddedSize ];
+		}
+	};
+	
+	VectorEmissionKernel( EmissionScorer scorer ) {
+		if( SPECIES.length() < 2 )
+			throw new UnsupportedOperationException( "No SIMD lanes for doubles" );
+		this.numberOfStates = scorer.getNumberOfStates();
+		this.vectorSize = scorer.getVectorSize();
+		this.paddedSize = ( vectorSize + SPECIES.length() - 1 ) / SPECIES.length() * SPECIES.length();
+		this.componentOffsets = scorer.getComponentOffsets();
+		this.constants = scorer.getConstants();
+		
+		int numberOfComponents = constants.length;
+		this.means = new double[ numberOfComponents * paddedSize ];
+		this.scaledPrecisions = new double[ numberOfComponents * paddedSize ];
+		for( int component = 0; component < numberOfComponents; component++ ) {
+			System.arraycopy( scorer.getMeans(), component * vectorSize, means, component * paddedSize, vectorSize );
+			System.arraycopy( scorer.getScaledPrecisions(), component * vectorSize, scaledPrecisions, component * paddedSize, vectorSize );
+		}
+	}
+	
+	public String getName() {
+		return "vector, " + SPECIES.length() + " lanes";
+	}
+	
+	public void score( float[] features, int offset, int numberOfVectors, double[] emissions, boolean bestComponentOnly ) {
+		double[] frames = theFrames.get();
+		
+		for( int firstFrame = 0; firstFrame < numberOfVectors; firstFrame += BLOCK_SIZE ) {
+			int blockFrames = Math.min( BLOCK_SIZE, numberOfVectors - firstFrame );
+			// Widen the features of the block, the padding stays zero
+			for( int frame = 0; frame < blockFrames; frame++ ) {
+				int featureOffset = offset + ( firstFrame + frame ) * vectorSize;
+				for( int featureIndex = 0; featureIndex < vectorSize; featureIndex++ )
+					frames[ frame * paddedSize + featureIndex ] = features[ featureOffset + featureIndex ];
+			}
+			
+			// A tile of states for all tiles of timeslices, then the next tile of states
+			for( int firstState = 0; firstState < numberOfStates; firstState += STATE_TILE ) {
+				int lastState = Math.min( firstState + STATE_TILE, numberOfStates );
+				for( int firstTileFrame = 0; firstTileFrame < blockFrames; firstTileFrame += FRAME_TILE ) {
+					int lastTileFrame = Math.min( firstTileFrame + FRAME_TILE, blockFrames );
+					for( int state = firstState; state < lastState; state++ ) {
+						int frame = firstTileFrame;
+						for( ; frame + 4 <= lastTileFrame; frame += 4 )
+							scoreFour( frames, frame, state, emissions, ( firstFrame + frame ) * numberOfStates + state, bestComponentOnly );
+						for( ; frame < lastTileFrame; frame++ )
+							emissions[ ( firstFrame + frame ) * numberOfStates + state ] = scoreOne( frames, frame, state, bestComponentOnly );
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Scores a state for four consecutive timeslices of the block
+	 * @param <b>frame</b> The first of the timeslices in the block
+	 * @param <b>emission</b> The index in emissions of the first timeslice; the others follow numberOfStates apart
+	 */
+	private void scoreFour( double[] frames, int frame, int state, double[] emissions, int emission, boolean bestComponentOnly ) {
+		int frame0 = frame * paddedSize, frame1 = frame0 + paddedSize, frame2 = frame1 + paddedSize, frame3 = frame2 + paddedSize;
+		double score0 = 0, score1 = 0, score2 = 0, score3 = 0;
+		
+		for( int component = componentOffsets[ state ]; component < componentOffsets[ state + 1 ]; component++ ) {
+			DoubleVector sum0 = DoubleVector.zero( SPECIES ), sum1 = sum0, sum2 = sum0, sum3 = sum0;
+			int parameter = component * paddedSize;
+			for( int featureIndex = 0; featureIndex < paddedSize; featureIndex += SPECIES.length() ) {
+				DoubleVector mean = DoubleVector.fromArray( SPECIES, means, parameter + featureIndex );
+				DoubleVector scaledPrecision = DoubleVector.fromArray( SPECIES, scaledPrecisions, parameter + featureIndex );
+				DoubleVector difference0 = DoubleVector.fromArray( SPECIES, frames, frame0 + featureIndex ).sub( mean );
+				DoubleVector difference1 = DoubleVector.fromArray( SPECIES, frames, frame1 + featureIndex ).sub( mean );
+				DoubleVector difference2 = DoubleVector.fromArray( SPECIES, frames, frame2 + featureIndex ).sub( mean );
+				DoubleVector difference3 = DoubleVector.fromArray( SPECIES, frames, frame3 + featureIndex ).sub( mean );
+				sum0 = difference0.mul( scaledPrecision ).fma( difference0, sum0 );
+				sum1 = difference1.mul( scaledPrecision ).fma( difference1, sum1 );
+				sum2 = difference2.mul( scaledPrecision ).fma( difference2, sum2 );
+				sum3 = difference3.mul( scaledPrecision ).fma( difference3, sum3 );
+			}
+			double constant = constants[ component ];
+			double component0 = constant + sum0.reduceLanes( VectorOperators.ADD );
+			double component1 = constant + sum1.reduceLanes( VectorOperators.ADD );
+			double component2 = constant + sum2.reduceLanes( VectorOperators.ADD );
+			double component3 = constant + sum3.reduceLanes( VectorOperators.ADD );
+			
+			if( component == componentOffsets[ state ] ) {
+				score0 = component0;
+				score1 = component1;
+				score2 = component2;
+				score3 = component3;
+			} else if( bestComponentOnly ) {
+				score0 = Math.max( score0, component0 );
+				score1 = Math.max( score1, component1 );
+				score2 = Math.max( score2, component2 );
+				score3 = Math.max( score3, component3 );
+			} else {
+				score0 = LogAdd.add( score0, component0 );
+				score1 = LogAdd.add( score1, component1 );
+				score2 = LogAdd.add( score2, component2 );
+				score3 = LogAdd.add( score3, component3 );
+			}
+		}
+		emissions[ emission ] = score0;
+		emissions[ emission + numberOfStates ] = score1;
+		emissions[ emission + 2 * numberOfStates ] = score2;
+		emissions[ emission + 3 * numberOfStates ] = score3;
+	}
+	
+	/**
+	 * @return The score of a state for a single timeslice of the block
+	 */
+	private double scoreOne( double[] frames, int frame, int state, boolean bestComponentOnly ) {
+		int frameOffset = frame * paddedSize;
+		double score = 0;
+		
+		for( int component = componentOffsets[ state ]; component < componentOffsets[ state + 1 ]; component++ ) {
+			DoubleVector sum = DoubleVector.zero( SPECIES );
+			int parameter = component * paddedSize;
+			for( int featureIndex = 0; featureIndex < paddedSize; featureIndex += SPECIES.length() ) {
+				DoubleVector difference = DoubleVector.fromArray( SPECIES, frames, frameOffset + featureIndex )
+						.sub( DoubleVector.fromArray( SPECIES, means, parameter + featureIndex ) );
+				sum = difference.mul( DoubleVector.fromArray( SPECIES, scaledPrecisions, parameter + featureIndex ) ).fma( difference, sum );
+			}
+			double componentScore = constants[ component ] + sum.reduceLanes( VectorOperators.ADD );
+			
+			if( component == componentOffsets[ state ] )
+				score = componentScore;
+			else
+				score = bestComponentOnly ? Math.max( score, componentScore ) : LogAdd.add( score, componentScore );
+		}
+		return score;
+	}
+}
@@ -0,0 +1,130 @@
+package speechRecogniser;
+
+import java.util.Arrays;
+
+import speechRecogniser.hmm.DecodingGraph;
+
+/**
+ * The ViterbiSearch is the time-synchronous Viterbi algorithm over the full trellis of the DecodingGraph:
+ * every step visits every state. Only the scores of the current and the next timeslice are kept,
+ * with the word boundary record of the best path into every state.
+ */
+class ViterbiSearch extends Search {
+	// Scores of the current and next timeslice for every state
+	private double[] theScores, theNextScores;
+	// Word boundary record on the best path into every state for the current and next timeslice, -1 for none
+	private int[] theHistories, theNextHistories;
+	
+	ViterbiSearch( DecodingGraph graph, RecogniserSettings settings ) {
+		super( graph, settings );
+		int numberOfStates = graph.getNumberOfStates();
+		this.theScores = new double[ numberOfStates ];
+		this.theNextScores = new double[ numberOfStates ];
+		this.theHistories = new int[ numberOfStates ];
+		this.theNextHistories = new int[ numberOfStates ];
+	}
+	
+	void start() {
+		// Initialise the viterbi columns to log(0) => -Infinity, so unreached and pruned states are never expanded
+		Arrays.fill( theScores, Double.NEGATIVE_INFINITY );
+		Arrays.fill( theHistories, -1 );
+		Arrays.fill( theNextHistories, -1 );
+		// log P(1) => 0
+		theScores[ 0 ] = 0;
+		numberOfRecords = 0;
+		clearExits();
+	}
+	
+	/**
+	 * One step of the Viterbi algorithm, from the current timeslice to the next.
+	 * Only the states within the beam of the best state of a timeslice, and at most maxActiveStates of them, are expanded.
+	 */
+	int step( double[] emissions, int emissionOffset, boolean emitting, int timeslice ) {
+		// The compiled automaton
+		int numberOfStates = theGraph.getNumberOfStates();
+		int[] successorOffsets = theGraph.getSuccessorOffsets();
+		int[] successors = theGraph.getSuccessors();
+		double[] probabilities = theGraph.getProbabilities();
+		int[] emissionIndices = theGraph.getEmissionIndices();
+		
+		double threshold = Double.NEGATIVE_INFINITY;
+		if( isPruning( numberOfStates ) )
+			threshold = pruningThreshold( theScores, numberOfStates );
+		
+		Arrays.fill( theNextScores, Double.NEGATIVE_INFINITY );
+		clearExits();
+		int tailPredecessor = -1;
+		int active = 0;
+		
+		for( int stateNo = 0; stateNo < numberOfStates; stateNo++ ) {					// for each state s from 0 to num-states do
+			double previousPathProb = theScores[ stateNo ];								// viterbi[ s, t ]
+			// skip unreached and pruned states
+			if( previousPathProb == Double.NEGATIVE_INFINITY || previousPathProb < threshold )
+				continue;
+			active++;
+			
+			int last = successorOffsets[ stateNo + 1 ];
+			for( int t = successorOffsets[ stateNo ]; t < last; t++ ) {					// for each transmission s' from s specified by state-graph
+				int nextStateNo = successors[ t ];										// s'
+				int emissionIndex = emissionIndices[ nextStateNo ];
+				
+				double transProb = probabilities[ t ];									// a[ s, s' ]
+				double obsLikelihood = ( emitting && emissionIndex >= 0 ) ? emissions[ emissionOffset + emissionIndex ] : 0;	// Bs'[ Ot ]
+				double newScore = previousPathProb + transProb + obsLikelihood;			// = viterbi[ s, t ]) + a[ s, s' ] + Bs'[ Ot ]
+				if( !emitting && nextStateNo == tailStateNo )
+					addExit( stateNo, newScore );
+				if( newScore > theNextScores[ nextStateNo ] ) {							// viterbi[ s', t+1 ]
+					theNextScores[ nextStateNo ] = newScore;								// viterbi[ s', t+1 ] <- new-score
+					theNextHistories[ nextStateNo ] = theHistories[ stateNo ];				// the path keeps its word boundaries
+					if( nextStateNo == tailStateNo )
+						tailPredecessor = stateNo;
+				}
+			}
+		}
+		
+		// A path leaving a word into the tail passes a word boundary
+		if( tailPredecessor >= 0 )
+			theNextHistories[ tailStateNo ] = addRecord( tailPredecessor, timeslice, theHistories[ tailPredecessor ] );
+		
+		swapColumns();
+		return active;
+	}
+	
+	private void swapColumns() {
+		double[] scores = theScores;
+		theScores = theNextScores;
+		theNextScores = scores;
+		int[] histories = theHistories;
+		theHistories = theNextHistories;
+		theNextHistories = histories;
+	}
+	
+	int getPartialWordState() {
+		int[] successorOffsets = theGraph.getSuccessorOffsets();
+		int[] successors = theGraph.getSuccessors();
+		double[] probabilities = theGraph.getProbabilities();
+		
+		// The best path into the tail in the next step
+		double bestScore = Double.NEGATIVE_INFINITY;
+		int bestStateNo = -1;
+		for( int stateNo = 0; stateNo < tailStateNo; stateNo++ ) {
+			if( theScores[ stateNo ] == Double.NEGATIVE_INFINITY )
+				continue;
+			for( int t = successorOffsets[ stateNo ]; t < successorOffsets[ stateNo + 1 ]; t++ ) {
+				if( successors[ t ] == tailStateNo && theScores[ stateNo ] + probabilities[ t ] > bestScore ) {
+					bestScore = theScores[ stateNo ] + probabilities[ t ];
+					bestStateNo = stateNo;
+				}
+			}
+		}
+		return bestStateNo;
+	}
+	
+	int getFinalWordState() {
+		// The most probable path ends in the tail, its last record holds the final state of the word
+		int record = theHistories[ tailStateNo ];
+		if( theScores[ tailStateNo ] == Double.NEGATIVE_INFINITY || record < 0 )
+			return -1;
+		return theRecordStates[ record ];
+	}
+}
@@ -1,40 +1,55 @@
 package speechRecogniser.entity;
 
-import java.util.*;
-
 /**
- * A FeatureVector represents a timeslice of an Observation, or vectors for trained data of a phoneme
+ * A FeatureVector represents a timeslice of an Observation.
+ * It is a view on a part of a primitive array, so timeslices are not copied out of the Observation.
  * @author Zeeger Lubsen
  */
 public class FeatureVector {
-	private List<Double> featureVector;
+	// The array holding the features, and the position and number of the features of this vector in it
+	private final float[] theData;
+	private final int theOffset;
+	private final int theSize;
 	
-	public FeatureVector() {
-		featureVector = new ArrayList<Double>();
+	public FeatureVector( float[] data, int offset, int size ) {
+		if( offset < 0 || size < 0 || offset + size > data.length )
+			throw new IndexOutOfBoundsException();
+		this.theData = data;
+		this.theOffset = offset;
+		this.theSize = size;
 	}
 	
-	public List<Double> getFeatures() {
-		return this.featureVector;
+	public FeatureVector( float[] data ) {
+		this( data, 0, data.length );
 	}
 	
-	public void add( double value ) {
-		featureVector.add( value );
+	public int size() {
+		return this.theSize;
 	}
+	
 	public double get( int index ) {
-		if( index < featureVector.size() )
-			return featureVector.get( index );
+		if( index >= 0 && index < theSize )
+			return theData[ theOffset + index ];
 		throw new IndexOutOfBoundsException();
 	}
 	
+	/**
+	 * @return The backing array, the features of this vector start at getOffset()
+	 */
+	public float[] getData() {
+		return this.theData;
+	}
+	
+	public int getOffset() {
+		return this.theOffset;
+	}
+	
 	// For debugging
 	public String toString() {
 		String output = "";
 		
-		if( featureVector == null )
-			return "empty";
-		
-		for( Double f : this.featureVector ) {
-			output += f + " ";
+		for( int index = 0; index < theSize; index++ ) {
+			output += theData[ theOffset + index ] + " ";
 		}
 		return output;
 	}
@@ -1,34 +1,69 @@
 package speechRecogniser.entity;
 
-import java.util.List;
-
 /**
  * The Observation is the input of the recogniser, the spoken word to be recognised.
- * It contains the observed sequence of feature vectors.
+ * It contains the observed sequence of feature vectors, stored timeslice after timeslice in a single array.
  * @author Zeeger Lubsen
  *
  */
 public class Observation {
-	// The observed sequence of features
-	private List<FeatureVector> theFeatureVectors;		
+	// The observed features, vectorSize features for each timeslice
+	private final float[] theFeatures;
+	// The number of timeslices
+	private final int numberOfVectors;
+	// The number of features in each timeslice
+	private final int vectorSize;
+	// The time between timeslices in 100ns units as in HTK, 0 when unknown
+	private final int samplePeriod;
+	
+	public Observation( float[] features, int numberOfVectors, int vectorSize ) {
+		this( features, numberOfVectors, vectorSize, 0 );
+	}
+	
+	public Observation( float[] features, int numberOfVectors, int vectorSize, int samplePeriod ) {
+		if( numberOfVectors < 0 || vectorSize < 0 || features.length < numberOfVectors * vectorSize )
+			throw new IllegalArgumentException( "Observation of " + numberOfVectors + " vectors of size " + vectorSize
+					+ " does not fit in " + features.length + " features" );
+		this.theFeatures = features;
+		this.numberOfVectors = numberOfVectors;
+		this.vectorSize = vectorSize;
+		this.samplePeriod = samplePeriod;
+	}
+	
+	/**
+	 * @return The features of all timeslices; feature i of timeslice t is at index t * getVectorSize() + i
+	 */
+	public float[] getFeatures() {
+		return this.theFeatures;
+	}
+	
+	public int getNumberOfVectors() {
+		return this.numberOfVectors;
+	}
 	
-	public Observation( List<FeatureVector> aFeatureVectorList ) {
-		this.theFeatureVectors = aFeatureVectorList;
+	public int getVectorSize() {
+		return this.vectorSize;
 	}
 	
-	public List<FeatureVector> getFeatureVectors() {
-		return this.theFeatureVectors;
+	public int getSamplePeriod() {
+		return this.samplePeriod;
+	}
+	
+	/**
+	 * @return A view on the features of the timeslice
+	 */
+	public FeatureVector getFeatureVector( int timeslice ) {
+		if( timeslice < 0 || timeslice >= numberOfVectors )
+			throw new IndexOutOfBoundsException();
+		return new FeatureVector( theFeatures, timeslice * vectorSize, vectorSize );
 	}
 	
 	// For debugging
 	public String toString() {
 		String output = "";
 		
-		if( this.theFeatureVectors == null )
-			return "empty";
-		
-		for( FeatureVector f : this.theFeatureVectors ) {
-			output += f + "\n";
+		for( int timeslice = 0; timeslice < numberOfVectors; timeslice++ ) {
+			output += getFeatureVector( timeslice ) + "\n";
 		}
 		return output;
 	}
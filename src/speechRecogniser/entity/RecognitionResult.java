@@ -0,0 +1,87 @@
+package speechRecogniser.entity;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The RecognitionResult is the output of the Recogniser for a single Observation.
+ * Besides the recognised word it holds the N-best list: the best scoring words ranked by the log-probability of their
+ * best path, as many as the RecogniserSettings ask for.
+ */
+public class RecognitionResult {
+	// The recognised word, null when no word in the lexicon matched the observation
+	private final Word theWord;
+	// The candidate words, best first
+	private final List<WordHypothesis> theNBest;
+	// The number of states expanded by the search for each timeslice
+	private final int[] theActiveStates;
+	// The timings and other measurements of the decode, null for partial results
+	private final UtteranceMetrics theMetrics;
+	
+	public RecognitionResult( Word aWord, int[] activeStates ) {
+		this( aWord, Collections.<WordHypothesis>emptyList(), activeStates, null );
+	}
+	
+	public RecognitionResult( Word aWord, List<WordHypothesis> nBest, int[] activeStates, UtteranceMetrics metrics ) {
+		this.theWord = aWord;
+		this.theNBest = Collections.unmodifiableList( nBest );
+		this.theActiveStates = activeStates;
+		this.theMetrics = metrics;
+	}
+	
+	public Word getWord() {
+		return this.theWord;
+	}
+	
+	/**
+	 * @return The candidate words ranked by score, best first; empty for partial results
+	 */
+	public List<WordHypothesis> getNBest() {
+		return this.theNBest;
+	}
+	
+	/**
+	 * @return The log-probability of the best path through the recognised word, -Infinity when nothing matched
+	 */
+	public double getScore() {
+		if( theWord == null )
+			return Double.NEGATIVE_INFINITY;
+		for( WordHypothesis hypothesis : theNBest ) {
+			if( hypothesis.getWord().getId() == theWord.getId() )
+				return hypothesis.getScore();
+		}
+		return Double.NEGATIVE_INFINITY;
+	}
+	
+	/**
+	 * @return The number of states expanded by the search for each timeslice, to tune the pruning
+	 */
+	public int[] getActiveStates() {
+		return this.theActiveStates;
+	}
+	
+	/**
+	 * @return The timings and other measurements of the decode, null for partial results
+	 */
+	public UtteranceMetrics getMetrics() {
+		return this.theMetrics;
+	}
+	
+	public double getAverageActiveStates() {
+		long total = 0;
+		for( int active : theActiveStates )
+			total += active;
+		return theActiveStates.length > 0 ? (double)total / theActiveStates.length : 0;
+	}
+	
+	public boolean isMatch() {
+		return this.theWord != null;
+	}
+	
+	// For debugging
+	public String toString() {
+		if( theWord == null )
+			return "No match!";
+		return theWord.getWord();
+	}
+}
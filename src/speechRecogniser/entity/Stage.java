@@ -0,0 +1,25 @@
+package speechRecogniser.entity;
+
+/**
+ * The Stages of the recogniser that are timed. Loading the model and building its automaton happen once,
+ * the other stages happen for every utterance.
+ */
+public enum Stage {
+	MODEL_LOAD( "modelLoad" ),
+	AUTOMATON( "automaton" ),
+	PARSE( "parse" ),
+	EMISSION( "emission" ),
+	SEARCH( "search" ),
+	BACKTRACE( "backtrace" );
+	
+	// The name in metrics output and of the MBean
+	private final String theName;
+	
+	private Stage( String aName ) {
+		this.theName = aName;
+	}
+	
+	public String getName() {
+		return this.theName;
+	}
+}
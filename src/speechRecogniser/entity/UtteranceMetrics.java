@@ -0,0 +1,128 @@
+package speechRecogniser.entity;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The UtteranceMetrics measure the recognition of a single utterance: the time spent in each stage,
+ * the real-time factor, the states the search expanded and the bytes the decoding thread allocated.
+ * The Recogniser measures emission scoring, search and backtrace; whoever parses the feature file adds the parse time.
+ */
+public class UtteranceMetrics {
+	// Nanoseconds spent per Stage, -1 for stages that were not measured
+	private final long[] theStageNanos = new long[ Stage.values().length ];
+	// The number of timeslices of the utterance
+	private final int numberOfFrames;
+	// The time between timeslices in 100ns units as in HTK, 0 when unknown
+	private final int samplePeriod;
+	// The states expanded by the search, over all its steps
+	private final long totalActiveStates;
+	// The number of steps of the search, the timeslices plus the step into the tail
+	private final int numberOfSteps;
+	// Bytes allocated by the decoding thread for the utterance, -1 when the JVM does not measure it
+	private final long allocatedBytes;
+	
+	public UtteranceMetrics( int numberOfFrames, int samplePeriod, int[] activeStates, long allocatedBytes ) {
+		Arrays.fill( theStageNanos, -1 );
+		this.numberOfFrames = numberOfFrames;
+		this.samplePeriod = samplePeriod;
+		long total = 0;
+		for( int active : activeStates )
+			total += active;
+		this.totalActiveStates = total;
+		this.numberOfSteps = activeStates.length;
+		this.allocatedBytes = allocatedBytes;
+	}
+	
+	/**
+	 * Adds time spent in a stage
+	 * @param <b>stage</b> The stage
+	 * @param <b>nanos</b> The time in nanoseconds
+	 */
+	public void addStageTime( Stage stage, long nanos ) {
+		theStageNanos[ stage.ordinal() ] = Math.max( theStageNanos[ stage.ordinal() ], 0 ) + nanos;
+	}
+	
+	public boolean isMeasured( Stage stage ) {
+		return theStageNanos[ stage.ordinal() ] >= 0;
+	}
+	
+	/**
+	 * @return The time spent in the stage in nanoseconds, 0 when it was not measured
+	 */
+	public long getStageNanos( Stage stage ) {
+		return Math.max( theStageNanos[ stage.ordinal() ], 0 );
+	}
+	
+	/**
+	 * @return The time spent in all measured stages in nanoseconds
+	 */
+	public long getProcessingNanos() {
+		long total = 0;
+		for( Stage stage : Stage.values() )
+			total += getStageNanos( stage );
+		return total;
+	}
+	
+	public int getNumberOfFrames() {
+		return this.numberOfFrames;
+	}
+	
+	/**
+	 * @return The duration of the audio, sampPeriod times nSamples, in seconds; 0 when the sample period is unknown
+	 */
+	public double getAudioSeconds() {
+		return numberOfFrames * (double)samplePeriod * 1e-7;
+	}
+	
+	/**
+	 * @return The processing time divided by the duration of the audio, NaN when the duration is unknown
+	 */
+	public double getRealTimeFactor() {
+		double audioSeconds = getAudioSeconds();
+		return audioSeconds > 0 ? getProcessingNanos() * 1e-9 / audioSeconds : Double.NaN;
+	}
+	
+	public long getTotalActiveStates() {
+		return this.totalActiveStates;
+	}
+	
+	public int getNumberOfSteps() {
+		return this.numberOfSteps;
+	}
+	
+	public double getActiveStatesPerFrame() {
+		return numberOfSteps > 0 ? (double)totalActiveStates / numberOfSteps : 0;
+	}
+	
+	/**
+	 * @return The bytes allocated by the decoding thread from the start to the end of the utterance, -1 when unknown
+	 */
+	public long getAllocatedBytes() {
+		return this.allocatedBytes;
+	}
+	
+	/**
+	 * @return The metrics as a single line JSON object, times in microseconds; unmeasured stages are left out
+	 * @param <b>name</b> The name of the utterance
+	 */
+	public String toSummaryLine( String name ) {
+		StringBuilder line = new StringBuilder( "{\"utterance\":\"" );
+		for( char character : name.toCharArray() ) {
+			if( character == '"' || character == '\\' )
+				line.append( '\\' );
+			line.append( character < ' ' ? ' ' : character );
+		}
+		line.append( "\",\"frames\":" ).append( numberOfFrames );
+		line.append( ",\"audioSeconds\":" ).append( String.format( Locale.ROOT, "%.3f", getAudioSeconds() ) );
+		for( Stage stage : Stage.values() ) {
+			if( isMeasured( stage ) )
+				line.append( ",\"" ).append( stage.getName() ).append( "Micros\":" ).append( getStageNanos( stage ) / 1000 );
+		}
+		double realTimeFactor = getRealTimeFactor();
+		line.append( ",\"realTimeFactor\":" ).append( Double.isNaN( realTimeFactor ) ? "null" : String.format( Locale.ROOT, "%.5f", realTimeFactor ) );
+		line.append( ",\"activeStatesPerFrame\":" ).append( String.format( Locale.ROOT, "%.1f", getActiveStatesPerFrame() ) );
+		line.append( ",\"allocatedBytes\":" ).append( allocatedBytes < 0 ? "null" : Long.toString( allocatedBytes ) );
+		return line.append( '}' ).toString();
+	}
+}
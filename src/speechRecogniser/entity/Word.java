@@ -6,16 +6,27 @@ import speechRecogniser.hmm.HMM;
 /**
  * Represents a word in the lexicon.
  * Contains the word, it's transtriction and a HMM.
+ * The id of the word and the ids of the phonemes of its transcription are interned by the Lexicon and PhonemeCollection;
+ * pronunciations of the same word share its id.
  * @author Zeeger Lubsen
  */
 public class Word {
+	private int theId;
 	private String theWord;
 	private List<String> thePhonemicTranscription;
+	// The ids of the phonemes in thePhonemicTranscription
+	private int[] thePhonemeIds;
 	private HMM theModel;
 	
-	public Word( String aWord, List<String> aTranscription ) {
+	public Word( int anId, String aWord, List<String> aTranscription, int[] phonemeIds ) {
+		this.theId = anId;
 		this.theWord = aWord;
 		this.thePhonemicTranscription = aTranscription;
+		this.thePhonemeIds = phonemeIds;
+	}
+	
+	public int getId() {
+		return this.theId;
 	}
 	
 	public String getWord() {
@@ -26,6 +37,10 @@ public class Word {
 		return this.thePhonemicTranscription;
 	}
 	
+	public int[] getPhonemeIds() {
+		return this.thePhonemeIds;
+	}
+	
 	public HMM getModel() {
 		return this.theModel;
 	}
@@ -0,0 +1,29 @@
+package speechRecogniser.entity;
+
+/**
+ * A WordHypothesis is a candidate Word for an Observation with the log-probability of its best path,
+ * an entry of the N-best list in a RecognitionResult.
+ */
+public class WordHypothesis {
+	private final Word theWord;
+	// Log-probability of the best path through the word
+	private final double theScore;
+	
+	public WordHypothesis( Word aWord, double aScore ) {
+		this.theWord = aWord;
+		this.theScore = aScore;
+	}
+	
+	public Word getWord() {
+		return this.theWord;
+	}
+	
+	public double getScore() {
+		return this.theScore;
+	}
+	
+	// For debugging
+	public String toString() {
+		return theWord.getWord() + "\t" + theScore;
+	}
+}
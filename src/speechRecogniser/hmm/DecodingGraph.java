@@ -0,0 +1,110 @@
+package speechRecogniser.hmm;
+
+import java.util.List;
+
+/**
+ * The DecodingGraph is the compiled form of an automaton for the Viterbi search.
+ * The HMM, State and Transition objects are convenient for composing phonemes into words and words into an automaton,
+ * but following their references in the inner loop of the search is slow. The DecodingGraph stores the same states
+ * and transitions in flat arrays, in compressed sparse row form:
+ * the transitions out of state s are at the indices successorOffsets[ s ] up to successorOffsets[ s + 1 ].
+ * The arrays are returned without copying for speed and must not be changed.
+ */
+public class DecodingGraph {
+	// Number of states in the graph
+	private final int numberOfStates;
+	// Index of the first transition out of each state, plus the total number of transitions at the end
+	private final int[] successorOffsets;
+	// The statenumber each transition moves to
+	private final int[] successors;
+	// The log-probability of each transition
+	private final double[] probabilities;
+	// The emission index of each state, -1 for nonemitting states
+	private final int[] emissionIndices;
+	
+	/**
+	 * Compiles the states of an automaton
+	 * @param <b>stateList</b> All states of the automaton, the statenumber of each state must be its index in the list
+	 */
+	public DecodingGraph( List<State> stateList ) {
+		this.numberOfStates = stateList.size();
+		this.successorOffsets = new int[ numberOfStates + 1 ];
+		this.emissionIndices = new int[ numberOfStates ];
+		
+		int numberOfTransitions = 0;
+		for( State state : stateList ) {
+			numberOfTransitions += state.getTransitions().size();
+		}
+		this.successors = new int[ numberOfTransitions ];
+		this.probabilities = new double[ numberOfTransitions ];
+		
+		int transition = 0;
+		for( int stateNo = 0; stateNo < numberOfStates; stateNo++ ) {
+			State state = stateList.get( stateNo );
+			if( state.getStateNumber() != stateNo )
+				throw new IllegalArgumentException( "State " + state + " is not numbered by its index " + stateNo );
+			
+			successorOffsets[ stateNo ] = transition;
+			emissionIndices[ stateNo ] = state.getEmissionIndex();
+			for( Transition t : state.getTransitions() ) {
+				successors[ transition ] = t.getNextState().getStateNumber();
+				probabilities[ transition ] = t.getProbability();
+				transition++;
+			}
+		}
+		successorOffsets[ numberOfStates ] = transition;
+	}
+	
+	/**
+	 * Creates a graph from its arrays, as stored in a compiled model file
+	 * @param <b>successorOffsets</b> Index of the first transition out of each state, plus the total number of transitions
+	 * @param <b>successors</b> The statenumber each transition moves to
+	 * @param <b>probabilities</b> The log-probability of each transition
+	 * @param <b>emissionIndices</b> The emission index of each state, -1 for nonemitting states
+	 */
+	public DecodingGraph( int[] successorOffsets, int[] successors, double[] probabilities, int[] emissionIndices ) {
+		if( successorOffsets.length != emissionIndices.length + 1 || successors.length != probabilities.length
+				|| successorOffsets[ emissionIndices.length ] != successors.length )
+			throw new IllegalArgumentException( "Inconsistent graph of " + emissionIndices.length + " states and " + successors.length + " transitions" );
+		// The transitions out of a state start where those of the state before end
+		if( successorOffsets[ 0 ] != 0 )
+			throw new IllegalArgumentException( "First successor offset " + successorOffsets[ 0 ] + " instead of 0" );
+		for( int state = 0; state < emissionIndices.length; state++ ) {
+			if( successorOffsets[ state + 1 ] < successorOffsets[ state ] )
+				throw new IllegalArgumentException( "Successor offset " + successorOffsets[ state + 1 ] + " of state " + ( state + 1 ) + " below " + successorOffsets[ state ] );
+		}
+		for( int successor : successors ) {
+			if( successor < 0 || successor >= emissionIndices.length )
+				throw new IllegalArgumentException( "Transition to state " + successor + " of " + emissionIndices.length );
+		}
+		this.numberOfStates = emissionIndices.length;
+		this.successorOffsets = successorOffsets;
+		this.successors = successors;
+		this.probabilities = probabilities;
+		this.emissionIndices = emissionIndices;
+	}
+	
+	public int getNumberOfStates() {
+		return this.numberOfStates;
+	}
+	
+	public int getNumberOfTransitions() {
+		return this.successors.length;
+	}
+	
+	public int[] getSuccessorOffsets() {
+		return this.successorOffsets;
+	}
+	
+	public int[] getSuccessors() {
+		return this.successors;
+	}
+	
+	public double[] getProbabilities() {
+		return this.probabilities;
+	}
+	
+	public int[] getEmissionIndices() {
+		return this.emissionIndices;
+	}
+}
@@ -0,0 +1,32 @@
+package speechRecogniser.hmm;
+
+/**
+ * A Gaussian with a diagonal covariance, the output distribution of an emitting state.
+ * The vectors may be shared with other Gaussians, when the model ties them with macros; they must not be changed.
+ */
+public class Gaussian {
+	private final float[] mean;
+	private final float[] variance;
+	// The GCONST as read from the model, NaN when the model does not give it
+	private final double gconst;
+	
+	public Gaussian( float[] mean, float[] variance, double gconst ) {
+		if( mean.length != variance.length )
+			throw new IllegalArgumentException( "Mean of size " + mean.length + " and variance of size " + variance.length );
+		this.mean = mean;
+		this.variance = variance;
+		this.gconst = gconst;
+	}
+	
+	public float[] getMean() {
+		return this.mean;
+	}
+	
+	public float[] getVariance() {
+		return this.variance;
+	}
+	
+	public double getGCONSTValue() {
+		return this.gconst;
+	}
+}
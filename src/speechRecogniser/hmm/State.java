@@ -3,8 +3,6 @@ package speechRecogniser.hmm;
 import java.util.ArrayList;
 import java.util.List;
 
-import speechRecogniser.entity.FeatureVector;
-
 /**
  * The state class is a state in a HMM.
  * @author Zeeger Lubsen
@@ -13,28 +11,27 @@ import speechRecogniser.entity.FeatureVector;
 public class State {
 	// List of transition out of this state
 	protected List<Transition> stateTransitions;
-	// List of emissions for an Observation. The index of the list is the index for the timeslice of the observation
-	protected List<Double> stateEmissions;
+	// Index of the emission log-probabilities of this state in the emission buffer of a decode, -1 when nonemitting
+	protected int emissionIndex;
 	// Reference to the next state in the linked list
 	protected State nextState;
 	// Reference to the previous state in the linked list
 	protected State previousState;
 	// State number in the HMM
 	protected int stateNumber;
-	// Name of the phoneme this state is part of, for backtracing the word out of a best path.
+	// Name of the phoneme this state is part of, for debugging; the word of a best path comes from the CompiledModel
 	protected String phoneme;
 
-	// Mean, variance and gconst of a trained HMM
-	private FeatureVector mean;
-	private FeatureVector variance;
-	private double gconst;
+	// The output distribution of a trained HMM: a mixture of Gaussians with the log of their weights
+	private Gaussian[] components;
+	private double[] logWeights;
 	
 	/**
 	 * Create a new state with no references
 	 */
 	public State() {
 		stateTransitions = new ArrayList<Transition>();
-		stateEmissions = new ArrayList<Double>();
+		emissionIndex = -1;
 		nextState = null;
 		previousState = null;
 	}
@@ -46,11 +43,10 @@ public class State {
 	 */
 	public State( State state ) {
 		// set refences to static data
-		this.stateEmissions = state.stateEmissions;
+		this.emissionIndex = state.emissionIndex;
 		this.stateNumber = state.stateNumber;
-		this.gconst = state.gconst;
-		this.mean = state.mean;
-		this.variance = state.variance;
+		this.components = state.components;
+		this.logWeights = state.logWeights;
 		this.phoneme = state.phoneme;
 		
 		// init dynamic data
@@ -81,16 +77,14 @@ public class State {
 	public List<Transition> getTransitions() {
 		return this.stateTransitions;
 	}
-	public List<Double> getEmissions() {
-		return this.stateEmissions;
+	public int getEmissionIndex() {
+		return this.emissionIndex;
 	}
-	public double getEmission( int sliceIndex ) {
-		if( sliceIndex < stateEmissions.size() )
-			return stateEmissions.get( sliceIndex );
-		return 0;
+	public void setEmissionIndex( int value ) {
+		this.emissionIndex = value;
 	}
-	public void addEmission( double probability ) {
-		stateEmissions.add( probability );
+	public boolean isEmitting() {
+		return this.emissionIndex >= 0;
 	}
 	
 	public int getStateNumber() {
@@ -106,25 +100,30 @@ public class State {
 		phoneme = value;
 	}
 	
-	public FeatureVector getMean() {
-		return this.mean;
-	}
-	public void setMean( FeatureVector value ) {
-		this.mean = value;
+	/**
+	 * @return The Gaussians of the output distribution, null for a nonemitting state
+	 */
+	public Gaussian[] getComponents() {
+		return this.components;
 	}
 	
-	public FeatureVector getVariance() {
-		return this.variance;
-	}
-	public void setVariance( FeatureVector value ) {
-		this.variance = value;
+	/**
+	 * @return The log-weights of the Gaussians of the output distribution
+	 */
+	public double[] getLogWeights() {
+		return this.logWeights;
 	}
 	
-	public double getGCONSTValue() {
-		return this.gconst;
-	}
-	public void setGCONSTValue( double value ) {
-		this.gconst = value;
+	/**
+	 * Sets the output distribution, a single Gaussian has log-weight 0
+	 * @param <b>components</b> The Gaussians of the mixture
+	 * @param <b>logWeights</b> The log of the weight of each Gaussian
+	 */
+	public void setMixture( Gaussian[] components, double[] logWeights ) {
+		if( components.length == 0 || components.length != logWeights.length )
+			throw new IllegalArgumentException( components.length + " mixture components with " + logWeights.length + " weights" );
+		this.components = components;
+		this.logWeights = logWeights;
 	}
 	
 	public String toString() {
@@ -0,0 +1,104 @@
+package speechRecogniser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import speechRecogniser.entity.RecognitionResult;
+
+/**
+ * Checks that the BatchRecogniser recognises every file in order, reading ahead of the workers or not,
+ * and that reading ahead never stalls: with many small files, a single worker and a depth of 2, the readers
+ * and the worker pass the permits back and forth thousands of times
+ */
+public class BatchRecogniserTest {
+	private static final int NUMBER_OF_UTTERANCES = 400;
+	// Rounds of the stress test; a stall showed in about 1 of 20 rounds when the readers took the permits
+	private static final int ROUNDS = 20;
+	
+	@Rule
+	public TemporaryFolder theFolder = new TemporaryFolder();
+	
+	private Path theDirectory;
+	private CompiledModel theModel;
+	// The word recognised in every utterance, without reading ahead
+	private List<String> theExpectedWords;
+	
+	@Before
+	public void setUp() throws IOException, InterruptedException, ExecutionException {
+		theDirectory = theFolder.getRoot().toPath();
+		new SyntheticData( 10, 1, 1, 13, 5 ).writeTestSetup( theDirectory, 50, NUMBER_OF_UTTERANCES, 16 );
+		PhonemeCollection phonemes = PhonemeCollection.read( theDirectory.resolve( "hmms.mmf" ).toString() );
+		theModel = new CompiledModel( phonemes, Lexicon.read( theDirectory.resolve( "lexicon" ).toString(), phonemes ) );
+		theExpectedWords = recognise( 1, 0 );
+	}
+	
+	@Test( timeout = 120000 )
+	public void readingAheadWithOneWorkerNeverStalls() throws InterruptedException, ExecutionException {
+		for( int round = 0; round < ROUNDS; round++ )
+			assertEquals( "Round " + round, theExpectedWords, recognise( 1, 2 ) );
+	}
+	
+	@Test( timeout = 120000 )
+	public void readingAheadWithWorkersGivesTheSameWords() throws InterruptedException, ExecutionException {
+		assertEquals( theExpectedWords, recognise( 3, 1 ) );
+		assertEquals( theExpectedWords, recognise( 2, 16 ) );
+	}
+	
+	@Test( timeout = 60000 )
+	public void missingFilesFailWithoutStalling() throws InterruptedException, ExecutionException {
+		BatchRecogniser batch = new BatchRecogniser( theModel, new RecogniserSettings(), 1, 1, null );
+		List<Future<RecognitionResult>> results = new ArrayList<Future<RecognitionResult>>();
+		for( int utterance = 0; utterance < 10; utterance++ ) {
+			results.add( batch.submit( theDirectory.resolve( "mfc" ).resolve( "missing" + utterance + ".mfc" ) ) );
+			results.add( batch.submit( featureFile( utterance ) ) );
+		}
+		batch.shutdown();
+		
+		for( int index = 0; index < results.size(); index++ ) {
+			if( index % 2 == 1 ) {
+				assertEquals( theExpectedWords.get( index / 2 ), results.get( index ).get().getWord().getWord() );
+				continue;
+			}
+			try {
+				results.get( index ).get();
+				fail( "Recognised a missing file" );
+			} catch( ExecutionException e ) {
+				assertTrue( e.getCause() instanceof NoSuchFileException );
+			}
+		}
+	}
+	
+	/**
+	 * @return The words recognised in all utterances, in order
+	 */
+	private List<String> recognise( int numberOfWorkers, int prefetchDepth ) throws InterruptedException, ExecutionException {
+		BatchRecogniser batch = new BatchRecogniser( theModel, new RecogniserSettings(), numberOfWorkers, prefetchDepth, null );
+		List<Future<RecognitionResult>> results = new ArrayList<Future<RecognitionResult>>();
+		for( int utterance = 0; utterance < NUMBER_OF_UTTERANCES; utterance++ )
+			results.add( batch.submit( featureFile( utterance ) ) );
+		batch.shutdown();
+		
+		List<String> words = new ArrayList<String>();
+		for( Future<RecognitionResult> result : results )
+			words.add( result.get().isMatch() ? result.get().getWord().getWord() : null );
+		return words;
+	}
+	
+	private Path featureFile( int utterance ) {
+		return theDirectory.resolve( "mfc" ).resolve( "utt" + utterance + ".mfc" );
+	}
+}
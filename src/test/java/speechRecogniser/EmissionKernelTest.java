@@ -0,0 +1,93 @@
+package speechRecogniser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import speechRecogniser.entity.Observation;
+
+/**
+ * Checks the VectorEmissionKernel against the scalar loop of the EmissionScorer, over tiles of timeslices and states
+ * that do not fill the tiles; skipped when the Vector API or SIMD lanes for doubles are not available
+ */
+public class EmissionKernelTest {
+	// Relative tolerance of the kernel to the scalar loop; the order of the additions differs
+	private static final double TOLERANCE = 1e-12;
+	
+	@Rule
+	public TemporaryFolder theFolder = new TemporaryFolder();
+	
+	private EmissionScorer theScorer;
+	private EmissionKernel theKernel;
+	private Observation theObservation;
+	
+	@Before
+	public void setUp() throws IOException {
+		// 21 phonemes of 3 states are not a multiple of the state tile, 3 mixture components, vectors of 39 are not a multiple of the lanes
+		SyntheticData data = new SyntheticData( 20, 3, 3, 39, 4 );
+		File directory = theFolder.getRoot();
+		data.writeModel( directory.toPath().resolve( "hmms.mmf" ) );
+		data.writeLexicon( directory.toPath().resolve( "lexicon" ), 20 );
+		// a full block and a part of one, not a multiple of the frame tile nor of 4
+		data.writeFeatures( directory.toPath().resolve( "utterance.mfc" ), 91 );
+		
+		theScorer = new EmissionScorer( PhonemeCollection.read( new File( directory, "hmms.mmf" ).getPath() ) );
+		theObservation = new SignalProcessor( directory.toPath().resolve( "utterance.mfc" ) ).getObservation();
+		try {
+			theKernel = new VectorEmissionKernel( theScorer );
+		} catch( UnsupportedOperationException e ) {
+			Assume.assumeNoException( e );
+		} catch( LinkageError e ) {
+			// jdk.incubator.vector is not available
+			Assume.assumeNoException( e );
+		}
+	}
+	
+	@Test
+	public void matchesScalarLoop() {
+		checkAgainstScalarLoop( 0, theObservation.getNumberOfVectors(), false );
+	}
+	
+	@Test
+	public void matchesScalarLoopWithBestComponentOnly() {
+		checkAgainstScalarLoop( 0, theObservation.getNumberOfVectors(), true );
+	}
+	
+	@Test
+	public void matchesScalarLoopFromOffset() {
+		checkAgainstScalarLoop( 5, 19, false );
+	}
+	
+	@Test
+	public void matchesScalarLoopForSingleFrames() {
+		for( int frame = 0; frame < 7; frame++ )
+			checkAgainstScalarLoop( frame, 1, false );
+	}
+	
+	/**
+	 * Scores a block of timeslices with the kernel, and every timeslice of the block with the scalar loop
+	 */
+	private void checkAgainstScalarLoop( int firstFrame, int numberOfFrames, boolean bestComponentOnly ) {
+		int numberOfStates = theScorer.getNumberOfStates();
+		int vectorSize = theScorer.getVectorSize();
+		float[] features = theObservation.getFeatures();
+		double[] scalar = new double[ numberOfFrames * numberOfStates ];
+		double[] vector = new double[ numberOfFrames * numberOfStates ];
+		
+		for( int frame = 0; frame < numberOfFrames; frame++ )
+			theScorer.scoreSlice( features, ( firstFrame + frame ) * vectorSize, scalar, frame * numberOfStates, bestComponentOnly );
+		theKernel.score( features, firstFrame * vectorSize, numberOfFrames, vector, bestComponentOnly );
+		
+		for( int index = 0; index < scalar.length; index++ ) {
+			assertEquals( "Frame " + ( firstFrame + index / numberOfStates ) + ", state " + index % numberOfStates + " (" + theKernel.getName() + ")",
+					scalar[ index ], vector[ index ], TOLERANCE * Math.max( 1, Math.abs( scalar[ index ] ) ) );
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package speechRecogniser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import speechRecogniser.entity.FeatureVector;
+import speechRecogniser.entity.Observation;
+import speechRecogniser.hmm.Gaussian;
+import speechRecogniser.hmm.State;
+
+/**
+ * Checks the EmissionScorer against the straightforward calculation of the emission log-probabilities,
+ * on synthetic models and feature files
+ */
+public class EmissionScorerTest {
+	// Relative tolerance of the EmissionScorer to the reference calculation
+	private static final double EMISSION_TOLERANCE = 1e-9;
+	
+	@Rule
+	public TemporaryFolder theFolder = new TemporaryFolder();
+	
+	@Test
+	public void singleGaussiansMatchReference() throws IOException {
+		checkAgainstReference( new SyntheticData( 10, 3, 1, 39, 1 ), 100 );
+	}
+	
+	@Test
+	public void mixturesMatchReference() throws IOException {
+		checkAgainstReference( new SyntheticData( 10, 3, 4, 39, 2 ), 100 );
+	}
+	
+	@Test
+	public void oddVectorSizeMatchesReference() throws IOException {
+		checkAgainstReference( new SyntheticData( 5, 2, 3, 13, 3 ), 37 );
+	}
+	
+	/**
+	 * Scores a feature file of the data with the EmissionScorer, and compares every emission to the reference
+	 */
+	private void checkAgainstReference( SyntheticData data, int numberOfFrames ) throws IOException {
+		File directory = theFolder.newFolder();
+		data.writeModel( directory.toPath().resolve( "hmms.mmf" ) );
+		data.writeLexicon( directory.toPath().resolve( "lexicon" ), 20 );
+		data.writeFeatures( directory.toPath().resolve( "utterance.mfc" ), numberOfFrames );
+		
+		PhonemeCollection phonemes = PhonemeCollection.read( new File( directory, "hmms.mmf" ).getPath() );
+		Observation observation = new SignalProcessor( directory.toPath().resolve( "utterance.mfc" ) ).getObservation();
+		EmissionScorer scorer = new EmissionScorer( phonemes );
+		
+		int size = observation.getNumberOfVectors() * scorer.getNumberOfStates();
+		double[] reference = new double[ size ];
+		double[] scored = new double[ size ];
+		calculateEmissionProbabilities( phonemes, observation, reference );
+		scorer.score( observation, scored );
+		
+		// Adding the components of a mixture with the LogAdd table is accurate to its error per addition
+		double mixtureTolerance = LogAdd.MAXIMUM_ERROR * ( scorer.getMaximumNumberOfComponents() - 1 );
+		for( int index = 0; index < size; index++ ) {
+			assertEquals( "Emission " + index + " (" + scorer.getKernelName() + ")", reference[ index ], scored[ index ],
+					EMISSION_TOLERANCE * Math.max( 1, Math.abs( reference[ index ] ) ) + mixtureTolerance );
+		}
+	}
+	
+	/**
+	 * Calculate the emission log-probabilities of the emitting states of the phonemes for every timeslice in the observation.
+	 * This is the straightforward reference calculation, decoding uses the faster EmissionScorer.
+	 * The emission of the state with emission index e at timeslice t is stored in emissions[ t * numberOfEmittingStates + e ]
+	 * @param <b>phonemes</b> The phonemes of a trained recogniser
+	 * @param <b>observation</b> The observation to calculate the emissions for
+	 * @param <b>emissions</b> The buffer to store the emissions in, large enough for all timeslices
+	 */
+	static void calculateEmissionProbabilities( PhonemeCollection phonemes, Observation observation, double[] emissions ) {
+		List<State> emittingStates = phonemes.getEmittingStates();
+		int numberOfEmittingStates = emittingStates.size();
+		
+		// for each emitting state of the phonemes in the collection
+		for( State state : emittingStates ) {
+			Gaussian[] components = state.getComponents();
+			double[] logWeights = state.getLogWeights();
+			double[] componentProbabilities = new double[ components.length ];
+			
+			// calculate the emission log-probabiltity for every timeslice
+			for( int vectorIndex = 0; vectorIndex < observation.getNumberOfVectors(); vectorIndex++ ) {
+				FeatureVector slice = observation.getFeatureVector( vectorIndex );
+				
+				// log( sum( weight * density ) ) = best + log( sum( exp( log( weight * density ) - best ) ) )
+				double best = Double.NEGATIVE_INFINITY;
+				for( int component = 0; component < components.length; component++ ) {
+					componentProbabilities[ component ] = logWeights[ component ] + calculateLogDensity( components[ component ], slice );
+					best = Math.max( best, componentProbabilities[ component ] );
+				}
+				double probability = best;
+				if( components.length > 1 ) {
+					double sum = 0;
+					for( double componentProbability : componentProbabilities )
+						sum += Math.exp( componentProbability - best );
+					probability += Math.log( sum );
+				}
+				
+				emissions[ vectorIndex * numberOfEmittingStates + state.getEmissionIndex() ] = probability;
+			}
+		}
+	}
+	
+	/**
+	 * @return The log-probability density of a Gaussian for a feature vector
+	 */
+	private static double calculateLogDensity( Gaussian gaussian, FeatureVector slice ) {
+		float[] mean = gaussian.getMean();
+		float[] variance = gaussian.getVariance();
+		double exponent = 0, logNormaliser = 0;
+		
+		for( int featureIndex = 0; featureIndex < slice.size(); featureIndex++ ) {
+			double difference = slice.get( featureIndex ) - mean[ featureIndex ];
+			exponent -= difference * difference / ( 2 * variance[ featureIndex ] );
+			logNormaliser += Math.log( 2 * Math.PI * variance[ featureIndex ] );
+		}
+		return exponent - 0.5 * logNormaliser;
+	}
+}
@@ -0,0 +1,56 @@
+package speechRecogniser;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks the table-driven LogAdd against log( exp( a ) + exp( b ) )
+ */
+public class LogAddTest {
+	@Test
+	public void matchesExactSumWithinMaximumError() {
+		// steps that do not fall on the table entries, differences up to beyond RANGE
+		for( double a = -60; a <= 0; a += 0.173 ) {
+			for( double b = -60; b <= 0; b += 0.0917 ) {
+				double exact = Math.log( Math.exp( a ) + Math.exp( b ) );
+				assertEquals( "log( exp( " + a + " ) + exp( " + b + " ) )", exact, LogAdd.add( a, b ), LogAdd.MAXIMUM_ERROR + 1e-12 );
+			}
+		}
+	}
+	
+	@Test
+	public void isExactOnTableEntries() {
+		for( double difference = 0; difference < LogAdd.RANGE; difference += 0.5 ) {
+			double exact = Math.log( Math.exp( 0 ) + Math.exp( -difference ) );
+			assertEquals( exact, LogAdd.add( 0, -difference ), 1e-15 );
+		}
+	}
+	
+	@Test
+	public void isSymmetric() {
+		for( double a = -40; a <= 0; a += 1.37 ) {
+			assertEquals( LogAdd.add( a, -7.3 ), LogAdd.add( -7.3, a ), 0 );
+		}
+	}
+	
+	@Test
+	public void addsLargeLogProbabilities() {
+		// exp overflows, so compare with the shifted sum
+		double exact = -3000 + Math.log( Math.exp( 0 ) + Math.exp( -2.2 ) );
+		assertEquals( exact, LogAdd.add( -3000, -3002.2 ), LogAdd.MAXIMUM_ERROR + 1e-12 );
+	}
+	
+	@Test
+	public void ignoresImpossibleArguments() {
+		assertEquals( -5.0, LogAdd.add( Double.NEGATIVE_INFINITY, -5 ), 0 );
+		assertEquals( -5.0, LogAdd.add( -5, Double.NEGATIVE_INFINITY ), 0 );
+		assertEquals( Double.NEGATIVE_INFINITY, LogAdd.add( Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY ), 0 );
+	}
+	
+	@Test
+	public void returnsLargerBeyondRange() {
+		assertEquals( -1.0, LogAdd.add( -1, -1 - LogAdd.RANGE ), 0 );
+		assertEquals( -1.0, LogAdd.add( -1 - 2 * LogAdd.RANGE, -1 ), 0 );
+	}
+}
@@ -0,0 +1,115 @@
+package speechRecogniser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a compiled model file is read as written, replaced atomically, and rejected when its indices are out of range or its offsets inconsistent
+ */
+public class ModelFileTest {
+	@Rule
+	public TemporaryFolder theFolder = new TemporaryFolder();
+	
+	private CompiledModel theModel;
+	private Path theFile;
+	
+	@Before
+	public void setUp() throws IOException {
+		File directory = theFolder.getRoot();
+		SyntheticData data = new SyntheticData( 10, 3, 2, 13, 6 );
+		data.writeModel( directory.toPath().resolve( "hmms.mmf" ) );
+		data.writeLexicon( directory.toPath().resolve( "lexicon" ), 30 );
+		PhonemeCollection phonemes = PhonemeCollection.read( new File( directory, "hmms.mmf" ).getPath() );
+		theModel = new CompiledModel( phonemes, Lexicon.read( new File( directory, "lexicon" ).getPath(), phonemes ) );
+		theFile = directory.toPath().resolve( "model.bin" );
+	}
+	
+	@Test
+	public void readsWhatWasWritten() throws IOException {
+		ModelFile.write( theModel, theFile );
+		CompiledModel model = ModelFile.read( theFile );
+		
+		assertEquals( theModel.getNumberOfStates(), model.getNumberOfStates() );
+		assertEquals( theModel.getLexicon().getWords().size(), model.getLexicon().getWords().size() );
+		assertArrayEquals( theModel.getGraph().getEmissionIndices(), model.getGraph().getEmissionIndices() );
+		assertArrayEquals( theModel.getEmissionScorer().getConstants(), model.getEmissionScorer().getConstants(), 0 );
+	}
+	
+	@Test
+	public void replacesFileWithoutLeavingTemporaryFiles() throws IOException {
+		Files.write( theFile, new byte[] { 1, 2, 3 } );
+		ModelFile.write( theModel, theFile );
+		
+		assertTrue( ModelFile.isModelFile( theFile ) );
+		assertEquals( 1, theFolder.getRoot().listFiles( new FilenameFilter() {
+			public boolean accept( File directory, String name ) {
+				return name.startsWith( "model.bin" );
+			}
+		} ).length );
+	}
+	
+	@Test
+	public void rejectsWordIndexOutOfRange() throws IOException {
+		ModelFile.write( theModel, theFile );
+		// The file ends with the word index of the last state
+		byte[] bytes = Files.readAllBytes( theFile );
+		ByteBuffer.wrap( bytes ).putInt( bytes.length - 4, theModel.getLexicon().getWords().size() );
+		Files.write( theFile, bytes );
+		
+		try {
+			ModelFile.read( theFile );
+			fail( "Read a model with a word index out of range" );
+		} catch( IOException e ) {
+			assertTrue( e.getMessage(), e.getMessage().contains( "word index" ) );
+		}
+	}
+	
+	@Test
+	public void rejectsDecreasingSuccessorOffsets() throws IOException {
+		ModelFile.write( theModel, theFile );
+		// The successor offsets are stored as their number followed by the offsets
+		int[] offsets = theModel.getGraph().getSuccessorOffsets();
+		ByteBuffer stored = ByteBuffer.allocate( 4 * ( offsets.length + 1 ) );
+		stored.putInt( offsets.length );
+		for( int offset : offsets )
+			stored.putInt( offset );
+		byte[] bytes = Files.readAllBytes( theFile );
+		int position = indexOf( bytes, stored.array() );
+		assertTrue( position >= 0 );
+		// The transitions out of the first state now end after those of the second
+		ByteBuffer.wrap( bytes ).putInt( position + 8, offsets[ 2 ] + 1 );
+		Files.write( theFile, bytes );
+		
+		try {
+			ModelFile.read( theFile );
+			fail( "Read a model with decreasing successor offsets" );
+		} catch( IOException e ) {
+			assertTrue( e.getMessage(), e.getMessage().contains( "Successor offset" ) );
+		}
+	}
+	
+	private static int indexOf( byte[] bytes, byte[] pattern ) {
+		for( int start = 0; start + pattern.length <= bytes.length; start++ ) {
+			int index = 0;
+			while( index < pattern.length && bytes[ start + index ] == pattern[ index ] )
+				index++;
+			if( index == pattern.length )
+				return start;
+		}
+		return -1;
+	}
+}
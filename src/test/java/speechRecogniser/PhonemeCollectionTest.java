@@ -0,0 +1,59 @@
+package speechRecogniser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import speechRecogniser.hmm.HMM;
+import speechRecogniser.hmm.State;
+
+/**
+ * Checks that only the states of the phonemes in the collection get an emission index, a tied state once
+ */
+public class PhonemeCollectionTest {
+	private static final String GAUSSIAN = "<MEAN> 2\n 0.0 1.0\n<VARIANCE> 2\n 1.0 1.0\n";
+	private static final String TRANSITIONS = "<TRANSP> 4\n"
+			+ " 0.0 1.0 0.0 0.0\n 0.0 0.5 0.5 0.0\n 0.0 0.0 0.5 0.5\n 0.0 0.0 0.0 0.0\n";
+	
+	@Rule
+	public TemporaryFolder theFolder = new TemporaryFolder();
+	
+	@Test
+	public void unusedStatesAreNotScored() throws IOException {
+		String model = "~o <VECSIZE> 2 <MFCC>\n"
+				+ "~s \"unused\"\n" + GAUSSIAN
+				+ "~s \"shared\"\n" + GAUSSIAN
+				+ "~h \"sil\"\n<BEGINHMM>\n<NUMSTATES> 4\n<STATE> 2\n~s \"shared\"\n<STATE> 3\n" + GAUSSIAN + TRANSITIONS + "<ENDHMM>\n"
+				+ "~h \"a\"\n<BEGINHMM>\n<NUMSTATES> 4\n<STATE> 2\n~s \"shared\"\n<STATE> 3\n~s \"shared\"\n" + TRANSITIONS + "<ENDHMM>\n"
+				// a second definition of a is ignored
+				+ "~h \"a\"\n<BEGINHMM>\n<NUMSTATES> 4\n<STATE> 2\n" + GAUSSIAN + "<STATE> 3\n" + GAUSSIAN + TRANSITIONS + "<ENDHMM>\n";
+		File file = theFolder.newFile( "hmms.mmf" );
+		Files.write( file.toPath(), model.getBytes( StandardCharsets.US_ASCII ) );
+		
+		PhonemeCollection phonemes = PhonemeCollection.read( file.getPath() );
+		assertEquals( 2, phonemes.getPhonemes().size() );
+		// the shared state and the own state of sil
+		assertEquals( 2, phonemes.getEmittingStates().size() );
+		assertEquals( 2, new EmissionScorer( phonemes ).getNumberOfStates() );
+		
+		State silShared = phonemes.getPhoneme( "sil" ).getFirstState().getNextState();
+		State silOwn = silShared.getNextState();
+		assertEquals( 0, silShared.getEmissionIndex() );
+		assertEquals( 1, silOwn.getEmissionIndex() );
+		assertSame( silOwn, phonemes.getEmittingStates().get( 1 ) );
+		
+		HMM a = phonemes.getPhoneme( "a" );
+		for( State state = a.getFirstState().getNextState(); state != a.getLastState(); state = state.getNextState() )
+			assertEquals( 0, state.getEmissionIndex() );
+		assertEquals( -1, a.getFirstState().getEmissionIndex() );
+		assertEquals( -1, a.getLastState().getEmissionIndex() );
+	}
+}
@@ -0,0 +1,170 @@
+package speechRecogniser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import speechRecogniser.entity.Observation;
+import speechRecogniser.entity.RecognitionResult;
+import speechRecogniser.entity.WordHypothesis;
+
+/**
+ * Checks that both search engines give the same N-best lists, with and without pruning, that the prefix tree
+ * recognises the same words as the linear graph, that the N-best list is ranked best first, and that streaming
+ * the timeslices gives the result of decoding the whole observation
+ */
+public class RecogniserTest {
+	private static final int NUMBER_OF_UTTERANCES = 8;
+	private static final int N_BEST = 5;
+	// Tolerance of the scores of the same path found by different engines or graphs
+	private static final double SCORE_TOLERANCE = 1e-6;
+	
+	@Rule
+	public TemporaryFolder theFolder = new TemporaryFolder();
+	
+	private PhonemeCollection thePhonemes;
+	private Lexicon theLexicon;
+	private CompiledModel theModel;
+	private List<Observation> theObservations;
+	
+	@Before
+	public void setUp() throws IOException {
+		Path directory = theFolder.getRoot().toPath();
+		new SyntheticData( 10, 3, 2, 13, 7 ).writeTestSetup( directory, 40, NUMBER_OF_UTTERANCES, 30 );
+		thePhonemes = PhonemeCollection.read( directory.resolve( "hmms.mmf" ).toString() );
+		theLexicon = Lexicon.read( directory.resolve( "lexicon" ).toString(), thePhonemes );
+		theModel = new CompiledModel( thePhonemes, theLexicon );
+		theObservations = new ArrayList<Observation>();
+		for( int utterance = 0; utterance < NUMBER_OF_UTTERANCES; utterance++ )
+			theObservations.add( new SignalProcessor( directory.resolve( "mfc" ).resolve( "utt" + utterance + ".mfc" ) ).getObservation() );
+	}
+	
+	@Test
+	public void tokenPassingMatchesViterbi() {
+		assertSameNBest( decode( theModel, settings( RecogniserSettings.Engine.VITERBI ) ),
+				decode( theModel, settings( RecogniserSettings.Engine.TOKEN_PASSING ) ), 0 );
+	}
+	
+	@Test
+	public void tokenPassingMatchesViterbiWhenPruning() {
+		RecogniserSettings viterbi = settings( RecogniserSettings.Engine.VITERBI );
+		RecogniserSettings tokenPassing = settings( RecogniserSettings.Engine.TOKEN_PASSING );
+		for( RecogniserSettings settings : new RecogniserSettings[] { viterbi, tokenPassing } ) {
+			settings.setBeam( 100 );
+			settings.setMaxActiveStates( 60 );
+		}
+		assertSameNBest( decode( theModel, viterbi ), decode( theModel, tokenPassing ), 0 );
+	}
+	
+	@Test
+	public void prefixTreeMatchesLinearGraph() {
+		CompiledModel prefixTree = new CompiledModel( thePhonemes, theLexicon, true );
+		assertTrue( prefixTree.getNumberOfStates() < theModel.getNumberOfStates() );
+		for( RecogniserSettings.Engine engine : RecogniserSettings.Engine.values() ) {
+			List<RecognitionResult> linear = decode( theModel, settings( engine ) );
+			List<RecognitionResult> tree = decode( prefixTree, settings( engine ) );
+			// The head of the tree gives every word the same prior, so the scores differ by a constant
+			double offset = tree.get( 0 ).getScore() - linear.get( 0 ).getScore();
+			assertSameNBest( linear, tree, offset );
+		}
+	}
+	
+	@Test
+	public void nBestIsRankedBestFirst() {
+		for( RecognitionResult result : decode( theModel, settings( RecogniserSettings.Engine.VITERBI ) ) ) {
+			List<WordHypothesis> nBest = result.getNBest();
+			assertEquals( N_BEST, nBest.size() );
+			assertEquals( result.getWord(), nBest.get( 0 ).getWord() );
+			assertEquals( result.getScore(), nBest.get( 0 ).getScore(), 0 );
+			for( int rank = 1; rank < nBest.size(); rank++ ) {
+				assertTrue( nBest.get( rank ).getScore() <= nBest.get( rank - 1 ).getScore() );
+				for( int better = 0; better < rank; better++ )
+					assertTrue( nBest.get( rank ).getWord().getId() != nBest.get( better ).getWord().getId() );
+			}
+		}
+	}
+	
+	@Test
+	public void streamingInChunksMatchesDecode() {
+		RecogniserSettings settings = settings( RecogniserSettings.Engine.TOKEN_PASSING );
+		List<RecognitionResult> expected = decode( theModel, settings );
+		Recogniser recogniser = new Recogniser( theModel, settings );
+		// Chunks of uneven sizes, and single frames
+		int[] chunkSizes = { 1, 7, 3, 0, 12, 1 };
+		List<RecognitionResult> streamed = new ArrayList<RecognitionResult>();
+		for( Observation observation : theObservations ) {
+			float[] features = observation.getFeatures();
+			int vectorSize = observation.getVectorSize();
+			recogniser.startUtterance();
+			int frame = 0;
+			for( int chunk = 0; frame < observation.getNumberOfVectors(); chunk++ ) {
+				int size = Math.min( chunkSizes[ chunk % chunkSizes.length ], observation.getNumberOfVectors() - frame );
+				if( size == 1 )
+					recogniser.acceptFrame( Arrays.copyOfRange( features, frame * vectorSize, ( frame + 1 ) * vectorSize ) );
+				else
+					recogniser.acceptFrames( features, frame * vectorSize, size );
+				frame += size;
+			}
+			assertEquals( observation.getNumberOfVectors(), recogniser.getNumberOfFrames() );
+			streamed.add( recogniser.finish() );
+		}
+		assertSameNBest( expected, streamed, 0 );
+	}
+	
+	@Test
+	public void acceptFrameRejectsWrongVectorSize() {
+		Recogniser recogniser = new Recogniser( theModel );
+		recogniser.startUtterance();
+		int vectorSize = theModel.getEmissionScorer().getVectorSize();
+		for( int size : new int[] { vectorSize - 1, vectorSize + 1 } ) {
+			try {
+				recogniser.acceptFrame( new float[ size ] );
+				fail( "Accepted a feature vector of size " + size );
+			} catch( IllegalArgumentException e ) {
+				assertEquals( 0, recogniser.getNumberOfFrames() );
+			}
+		}
+	}
+	
+	private static RecogniserSettings settings( RecogniserSettings.Engine engine ) {
+		RecogniserSettings settings = new RecogniserSettings();
+		settings.setEngine( engine );
+		settings.setNBest( N_BEST );
+		return settings;
+	}
+	
+	private List<RecognitionResult> decode( CompiledModel model, RecogniserSettings settings ) {
+		Recogniser recogniser = new Recogniser( model, settings );
+		List<RecognitionResult> results = new ArrayList<RecognitionResult>();
+		for( Observation observation : theObservations )
+			results.add( recogniser.decode( observation ) );
+		return results;
+	}
+	
+	/**
+	 * Checks that the N-best lists hold the same words in the same order, with the scores of actual offset from expected
+	 */
+	private static void assertSameNBest( List<RecognitionResult> expected, List<RecognitionResult> actual, double offset ) {
+		for( int utterance = 0; utterance < expected.size(); utterance++ ) {
+			List<WordHypothesis> expectedNBest = expected.get( utterance ).getNBest();
+			List<WordHypothesis> actualNBest = actual.get( utterance ).getNBest();
+			assertEquals( "Utterance " + utterance, expectedNBest.size(), actualNBest.size() );
+			for( int rank = 0; rank < expectedNBest.size(); rank++ ) {
+				String message = "Utterance " + utterance + ", rank " + rank;
+				assertEquals( message, expectedNBest.get( rank ).getWord().getWord(), actualNBest.get( rank ).getWord().getWord() );
+				assertEquals( message, expectedNBest.get( rank ).getScore() + offset, actualNBest.get( rank ).getScore(), SCORE_TOLERANCE );
+			}
+		}
+	}
+}